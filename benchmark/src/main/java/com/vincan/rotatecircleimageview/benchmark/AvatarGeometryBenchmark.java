@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview.benchmark;
+
+import com.vincan.rotatecircleimageview.core.AvatarGeometry;
+import com.vincan.rotatecircleimageview.core.DottedRing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The geometry part of setup(): laying the ring and the avatar circle out in the bounds, fitting the bitmap into
+ * the circle and placing the dots of the dotted track, across view and bitmap sizes.
+ *
+ * @author vincanyang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AvatarGeometryBenchmark {
+
+    @Param({"48", "144", "480"})
+    public int size;
+
+    @Param({"64", "1080"})
+    public int bitmapSize;
+
+    private final AvatarGeometry mGeometry = new AvatarGeometry();
+    private final DottedRing mDottedRing = new DottedRing();
+
+    @Benchmark
+    public void layout(Blackhole blackhole) {
+        mGeometry.update(0, 0, size, size * 4 / 3, 6, 2, false);
+        mGeometry.updateShaderTransform(bitmapSize, bitmapSize * 3 / 4);
+        blackhole.consume(mGeometry.getDrawableRadius());
+        blackhole.consume(mGeometry.getShaderTranslateX());
+    }
+
+    @Benchmark
+    public void layoutWithDottedTrack(Blackhole blackhole) {
+        layout(blackhole);
+        float radius = (mGeometry.getBorderRight() - mGeometry.getBorderLeft()) / 2f;
+        mDottedRing.update(mGeometry.getBorderLeft() + radius, mGeometry.getBorderTop() + radius, radius);
+        blackhole.consume(mDottedRing.getPoints());
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview.benchmark;
+
+import com.vincan.rotatecircleimageview.core.BorderSegments;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splitting the STILL border into one arc per color and building the stops of its sweep gradient, from one color
+ * up to the 50 a view accepts.
+ *
+ * @author vincanyang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BorderSegmentsBenchmark {
+
+    @Param({"1", "3", "10", "50"})
+    public int colorCount;
+
+    private int[] mBorderColors;
+    private int[] mColors;
+    private float[] mPositions;
+
+    @Setup
+    public void setup() {
+        mBorderColors = new int[colorCount];
+        for (int i = 0; i < colorCount; i++) {
+            mBorderColors[i] = 0xFF000000 | (i * 0x051F3D);
+        }
+        mColors = new int[BorderSegments.gradientStopCount(colorCount)];
+        mPositions = new float[mColors.length];
+    }
+
+    @Benchmark
+    public void arcAngles(Blackhole blackhole) {
+        float sweepAngle = BorderSegments.sweepAngle(colorCount);
+        for (int i = 0; i < colorCount; i++) {
+            blackhole.consume(BorderSegments.startAngle(i, colorCount));
+        }
+        blackhole.consume(sweepAngle);
+    }
+
+    @Benchmark
+    public void gradientStops(Blackhole blackhole) {
+        BorderSegments.fillGradientStops(mBorderColors, mColors, mPositions);
+        blackhole.consume(mPositions);
+    }
+}
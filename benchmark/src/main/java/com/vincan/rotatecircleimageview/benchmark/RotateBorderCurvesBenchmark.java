@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview.benchmark;
+
+import com.vincan.rotatecircleimageview.core.DottedRing;
+import com.vincan.rotatecircleimageview.core.RotateBorderCurves;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a ROTATE border computes on every frame: the rotation, the track phase, both track angles and how many dots
+ * of the dotted track are drawn.
+ *
+ * @author vincanyang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RotateBorderCurvesBenchmark {
+
+    private static final long FRAME_INTERVAL = 16;
+
+    @Param({"24", "96", "240"})
+    public int radius;
+
+    private final DottedRing mDottedRing = new DottedRing();
+    private long mElapsed;
+
+    @Setup
+    public void setup() {
+        mDottedRing.update(radius, radius, radius);
+    }
+
+    @Benchmark
+    public void frameAngles(Blackhole blackhole) {
+        mElapsed += FRAME_INTERVAL;//逐帧推进，覆盖首次展开与之后的往复
+        float phase = RotateBorderCurves.trackPhase(mElapsed, 1500);
+        blackhole.consume(RotateBorderCurves.rotateAngle(mElapsed, 1500));
+        blackhole.consume(RotateBorderCurves.solidTrackAngle(phase));
+        blackhole.consume(mDottedRing.getDotCount(RotateBorderCurves.dottedTrackAngle(phase)));
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview.core;
+
+/**
+ * The layout of an avatar inside its bounds: the square the border ring is stroked along, the rect and radius of the
+ * avatar circle, and the center-crop transform of the avatar bitmap. Reused across layouts, it never allocates.
+ *
+ * @author vincanyang
+ */
+public final class AvatarGeometry {
+
+    private float mBorderLeft;
+    private float mBorderTop;
+    private float mBorderRight;
+    private float mBorderBottom;
+
+    private float mDrawableLeft;
+    private float mDrawableTop;
+    private float mDrawableRight;
+    private float mDrawableBottom;
+    private float mDrawableRadius;
+
+    private float mShaderScale = 1f;
+    private float mShaderTranslateX;
+    private float mShaderTranslateY;
+
+    /**
+     * Centers the largest square in the bounds, strokes the border along its inside and fits the avatar circle
+     * within the padding, and within the border unless it overlays the avatar.
+     */
+    public void update(int left, int top, int right, int bottom, int borderWidth, int borderPadding,
+                       boolean borderOverlay) {
+        int width = right - left;
+        int height = bottom - top;
+        int sideLength = Math.min(width, height);
+        float squareLeft = left + (width - sideLength) / 2f;
+        float squareTop = top + (height - sideLength) / 2f;
+
+        float borderInset = borderWidth / 2.0f;
+        mBorderLeft = squareLeft + borderInset;
+        mBorderTop = squareTop + borderInset;
+        mBorderRight = squareLeft + sideLength - borderInset;
+        mBorderBottom = squareTop + sideLength - borderInset;
+
+        float drawableInset = 0;
+        if (borderPadding > 0) {
+            drawableInset += borderPadding;
+        }
+        if (!borderOverlay && borderWidth > 0) {
+            drawableInset += borderWidth - 1.0f;
+        }
+        mDrawableLeft = squareLeft + drawableInset;
+        mDrawableTop = squareTop + drawableInset;
+        mDrawableRight = squareLeft + sideLength - drawableInset;
+        mDrawableBottom = squareTop + sideLength - drawableInset;
+        mDrawableRadius = Math.min(getDrawableHeight() / 2.0f, getDrawableWidth() / 2.0f);
+    }
+
+    /**
+     * Computes the scale and pixel-aligned translation that make a {@code bitmapWidth x bitmapHeight} bitmap cover
+     * the avatar rect, centered.
+     */
+    public void updateShaderTransform(int bitmapWidth, int bitmapHeight) {
+        float drawableWidth = getDrawableWidth();
+        float drawableHeight = getDrawableHeight();
+        float dx = 0;
+        float dy = 0;
+
+        if (bitmapWidth * drawableHeight > drawableWidth * bitmapHeight) {
+            mShaderScale = drawableHeight / (float) bitmapHeight;
+            dx = (drawableWidth - bitmapWidth * mShaderScale) * 0.5f;
+        } else {
+            mShaderScale = drawableWidth / (float) bitmapWidth;
+            dy = (drawableHeight - bitmapHeight * mShaderScale) * 0.5f;
+        }
+
+        mShaderTranslateX = (int) (dx + 0.5f) + mDrawableLeft;
+        mShaderTranslateY = (int) (dy + 0.5f) + mDrawableTop;
+    }
+
+    public float getBorderLeft() {
+        return mBorderLeft;
+    }
+
+    public float getBorderTop() {
+        return mBorderTop;
+    }
+
+    public float getBorderRight() {
+        return mBorderRight;
+    }
+
+    public float getBorderBottom() {
+        return mBorderBottom;
+    }
+
+    public float getDrawableLeft() {
+        return mDrawableLeft;
+    }
+
+    public float getDrawableTop() {
+        return mDrawableTop;
+    }
+
+    public float getDrawableRight() {
+        return mDrawableRight;
+    }
+
+    public float getDrawableBottom() {
+        return mDrawableBottom;
+    }
+
+    public float getDrawableWidth() {
+        return mDrawableRight - mDrawableLeft;
+    }
+
+    public float getDrawableHeight() {
+        return mDrawableBottom - mDrawableTop;
+    }
+
+    public float getDrawableRadius() {
+        return mDrawableRadius;
+    }
+
+    public float getShaderScale() {
+        return mShaderScale;
+    }
+
+    public float getShaderTranslateX() {
+        return mShaderTranslateX;
+    }
+
+    public float getShaderTranslateY() {
+        return mShaderTranslateY;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview.core;
+
+/**
+ * How the STILL border splits into one arc per color: the arc angles, clockwise from 12 o'clock, and the hard
+ * stops of the sweep gradient that colors all arcs at once.
+ *
+ * @author vincanyang
+ */
+public final class BorderSegments {
+
+    public static final float START_ANGLE = 270f;
+    public static final float ARC_GAP_ANGLE = 6f;
+
+    private BorderSegments() {
+    }
+
+    public static float startAngle(int index, int count) {
+        return START_ANGLE + 360f / count * index;
+    }
+
+    /**
+     * @return the sweep of each arc, a full circle when there is a single color
+     */
+    public static float sweepAngle(int count) {
+        return count == 1 ? 360f : 360f / count - ARC_GAP_ANGLE;
+    }
+
+    /**
+     * @return the length of the arrays {@link #fillGradientStops(int[], int[], float[])} needs
+     */
+    public static int gradientStopCount(int count) {
+        return count * 2 + 2;
+    }
+
+    /**
+     * Fills the colors and positions of a sweep gradient starting at 12 o'clock, in which each color covers its arc
+     * from the middle of the gap before it to the middle of the gap after it, so that round caps keep their color.
+     * The first color also covers the end of the circle.
+     */
+    public static void fillGradientStops(int[] borderColors, int[] colors, float[] positions) {
+        int count = borderColors.length;
+        float halfGap = ARC_GAP_ANGLE / 2 / 360f;
+        for (int i = 0; i < count; i++) {
+            colors[i * 2] = borderColors[i];
+            positions[i * 2] = i == 0 ? 0f : (float) i / count - halfGap;
+            colors[i * 2 + 1] = borderColors[i];
+            positions[i * 2 + 1] = (float) (i + 1) / count - halfGap;
+        }
+        colors[count * 2] = borderColors[0];
+        positions[count * 2] = 1f - halfGap;
+        colors[count * 2 + 1] = borderColors[0];
+        positions[count * 2 + 1] = 1f;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview.core;
+
+/**
+ * The dot centers of the ROTATE border's dotted track: one dot every {@link #DOT_SPACING} pixels of arc length,
+ * clockwise from 12 o'clock, as an {@code x0, y0, x1, y1...} array ready for drawPoints.
+ *
+ * @author vincanyang
+ */
+public final class DottedRing {
+
+    public static final float DOT_SPACING = 16f;//dash 1 + gap 15
+    private static final float DOT_LENGTH = 1f;
+    private static final float START_ANGLE = 270f;
+
+    private float[] mPoints = new float[0];
+    private int mDotCount;
+    private float mRadius;
+
+    /**
+     * Recomputes the dot centers around the given circle, reusing the array when the dot count is unchanged.
+     */
+    public void update(float cx, float cy, float radius) {
+        mRadius = radius;
+        if (mRadius <= 0) {
+            mDotCount = 0;
+            return;
+        }
+        mDotCount = (int) Math.ceil(2 * Math.PI * mRadius / DOT_SPACING);
+        if (mPoints.length != mDotCount * 2) {
+            mPoints = new float[mDotCount * 2];
+        }
+        for (int i = 0; i < mDotCount; i++) {
+            double angle = Math.toRadians(START_ANGLE) + (i * DOT_SPACING + DOT_LENGTH / 2) / mRadius;
+            mPoints[i * 2] = cx + (float) (mRadius * Math.cos(angle));
+            mPoints[i * 2 + 1] = cy + (float) (mRadius * Math.sin(angle));
+        }
+    }
+
+    /**
+     * @return how many dots an arc of {@code sweepAngle} degrees from 12 o'clock covers
+     */
+    public int getDotCount(float sweepAngle) {
+        if (sweepAngle <= 0 || mDotCount == 0) {
+            return 0;
+        }
+        float arcLength = (float) Math.toRadians(Math.min(sweepAngle, 360f)) * mRadius;
+        return Math.min(mDotCount, (int) Math.ceil(arcLength / DOT_SPACING));
+    }
+
+    /**
+     * @return the dot centers, only the first {@code getDotCount(sweepAngle) * 2} values of which are drawn
+     */
+    public float[] getPoints() {
+        return mPoints;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview.core;
+
+/**
+ * The ROTATE border angles as pure functions of the time elapsed since the animation started.
+ *
+ * @author vincanyang
+ */
+public final class RotateBorderCurves {
+
+    public static final float SOLID_TRACK_MAX_ANGLE = 216f;
+    public static final float SOLID_TRACK_MIN_ANGLE = 36f;
+    public static final float DOTTED_TRACK_MAX_ANGLE = 360f;
+    public static final float DOTTED_TRACK_MIN_ANGLE = 108f;
+    public static final float TRACK_CYCLE_PHASE = 3f;
+
+    private RotateBorderCurves() {
+    }
+
+    public static float rotateAngle(long elapsed, int rotateDuration) {
+        if (rotateDuration <= 0) {
+            return 0f;
+        }
+        return 360f * (elapsed % rotateDuration) / rotateDuration;
+    }
+
+    /**
+     * 0=>216 once, then 216<=>36 forever, all accelerate-decelerate.
+     */
+    public static float solidTrackAngle(long elapsed, int trackDuration) {
+        return solidTrackAngle(trackPhase(elapsed, trackDuration));
+    }
+
+    /**
+     * 0=>360 once, then 360<=>108 forever, all linear.
+     */
+    public static float dottedTrackAngle(long elapsed, int trackDuration) {
+        return dottedTrackAngle(trackPhase(elapsed, trackDuration));
+    }
+
+    /**
+     * @return the elapsed time in track durations, folded into [0, {@link #TRACK_CYCLE_PHASE}) since everything
+     * after the first sweep repeats every two durations
+     */
+    public static float trackPhase(long elapsed, int trackDuration) {
+        if (trackDuration <= 0) {
+            return 1f;
+        }
+        if (elapsed < trackDuration) {
+            return (float) elapsed / trackDuration;
+        }
+        long cycleElapsed = (elapsed - trackDuration) % (2L * trackDuration);
+        return 1f + (float) cycleElapsed / trackDuration;
+    }
+
+    public static float solidTrackAngle(float phase) {
+        return trackAngle(phase, SOLID_TRACK_MAX_ANGLE, SOLID_TRACK_MIN_ANGLE, true);
+    }
+
+    public static float dottedTrackAngle(float phase) {
+        return trackAngle(phase, DOTTED_TRACK_MAX_ANGLE, DOTTED_TRACK_MIN_ANGLE, false);
+    }
+
+    private static float trackAngle(float phase, float maxAngle, float minAngle, boolean accelerateDecelerate) {
+        if (phase < 1f) {
+            return maxAngle * interpolate(phase, accelerateDecelerate);
+        }
+        float fraction = phase - 1f;
+        if (fraction >= 1f) {
+            fraction = 2f - fraction;//reverse
+        }
+        return maxAngle + (minAngle - maxAngle) * interpolate(fraction, accelerateDecelerate);
+    }
+
+    private static float interpolate(float fraction, boolean accelerateDecelerate) {
+        if (!accelerateDecelerate) {
+            return fraction;
+        }
+        return (float) (Math.cos((fraction + 1) * Math.PI) / 2.0f) + 0.5f;//同AccelerateDecelerateInterpolator
+    }
+}
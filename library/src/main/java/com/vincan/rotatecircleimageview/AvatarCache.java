@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import java.util.Map;
+
+/**
+ * A process-wide, memory-bounded LRU cache of the avatars prepared by {@link RotateCircleImageView#loadImageURI} and
+ * {@link RotateCircleImageView#loadImageResource}, keyed by source, target size and bitmap config, a null config
+ * standing for one picked per image. The budget is in bytes and defaults to 1/8 of the heap.
+ *
+ * @author vincanyang
+ */
+public final class AvatarCache {
+
+    private static LruCache<Key, Bitmap> sCache = newCache((int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE));
+    private static int sHitCount;//只统计绑定时的查找，预取的检查不计入
+    private static int sMissCount;
+
+    private AvatarCache() {
+    }
+
+    private static LruCache<Key, Bitmap> newCache(int maxSize) {
+        return new LruCache<Key, Bitmap>(maxSize) {
+            @Override
+            protected int sizeOf(Key key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Sets the memory budget in bytes, keeping the most recently used entries that still fit.
+     */
+    public static synchronized void setMaxSize(int maxSize) {
+        if (maxSize == sCache.maxSize()) {
+            return;
+        }
+        LruCache<Key, Bitmap> cache = newCache(maxSize);
+        for (Map.Entry<Key, Bitmap> entry : sCache.snapshot().entrySet()) {
+            cache.put(entry.getKey(), entry.getValue());
+        }
+        sCache = cache;
+    }
+
+    public static synchronized int maxSize() {
+        return sCache.maxSize();
+    }
+
+    /**
+     * @return the bytes currently held by the cache
+     */
+    public static synchronized int size() {
+        return sCache.size();
+    }
+
+    /**
+     * @return how many binds found their avatar in the cache; prefetches checking the cache are not counted
+     */
+    public static synchronized int hitCount() {
+        return sHitCount;
+    }
+
+    public static synchronized int missCount() {
+        return sMissCount;
+    }
+
+    public static synchronized int evictionCount() {
+        return sCache.evictionCount();
+    }
+
+    public static synchronized void clear() {
+        sCache.evictAll();
+    }
+
+    static synchronized Bitmap get(Key key) {
+        Bitmap bitmap = sCache.get(key);
+        if (bitmap != null) {
+            sHitCount++;
+        } else {
+            sMissCount++;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Like {@link #get(Key)}, but leaves the hit and miss counts alone.
+     */
+    static synchronized Bitmap peek(Key key) {
+        return sCache.get(key);
+    }
+
+    static synchronized void put(Key key, Bitmap bitmap) {
+        sCache.put(key, bitmap);
+    }
+
+    static final class Key {
+        final AvatarLoader.Source mSource;
+        final int mWidth;
+        final int mHeight;
+        final float mMargin;
+        final Bitmap.Config mConfig;
+
+        Key(AvatarLoader.Source source, int width, int height, float margin, Bitmap.Config config) {
+            mSource = source;
+            mWidth = width;
+            mHeight = height;
+            mMargin = margin;
+            mConfig = config;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return mWidth == key.mWidth && mHeight == key.mHeight && Float.compare(key.mMargin, mMargin) == 0
+                    && mConfig == key.mConfig && mSource.equals(key.mSource);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mSource.hashCode();
+            result = 31 * result + mWidth;
+            result = 31 * result + mHeight;
+            result = 31 * result + Float.floatToIntBits(mMargin);
+            result = 31 * result + (mConfig != null ? mConfig.hashCode() : 0);
+            return result;
+        }
+    }
+}
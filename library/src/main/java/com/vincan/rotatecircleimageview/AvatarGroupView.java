@@ -0,0 +1,548 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.util.AttributeSet;
+import android.view.View;
+
+import com.vincan.rotatecircleimageview.RotateCircleImageView.BorderStyle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A row of overlapping avatars, or a grid of them, e.g. for group chat headers. Every avatar is a
+ * {@link RotateCircleAvatarDrawable} drawn in this view's single onDraw, and all ROTATE borders are moved by one
+ * frame callback that invalidates the view once per frame.
+ * <p>
+ * In {@link Layout#OVERLAP}, later avatars are drawn over earlier ones.
+ *
+ * @author vincanyang
+ */
+public class AvatarGroupView extends View {
+
+    public enum Layout {
+        OVERLAP,
+        GRID
+    }
+
+    private static final float DEFAULT_OVERLAP = 0.3f;
+    private static final int DEFAULT_MAX_COLUMNS = 3;
+    private static final int DEFAULT_SPACING = 0;
+    private static final int DEFAULT_AVATAR_DIAMETER_DP = 40;
+
+    private final ArrayList<RotateCircleAvatarDrawable> mAvatars = new ArrayList<RotateCircleAvatarDrawable>();
+    private final ArrayList<Bitmap> mRasterizedBitmaps = new ArrayList<Bitmap>();//本view光栅化的位图，替换后归还位图池
+    private final ArrayList<Drawable> mRasterizedDrawables = new ArrayList<Drawable>();//按头像下标，detach后据此重建
+    private boolean mRasterizedReleased;
+    private Layout mLayout = Layout.OVERLAP;
+    private float mOverlap = DEFAULT_OVERLAP;
+    private int mMaxColumns = DEFAULT_MAX_COLUMNS;
+    private int mSpacing = DEFAULT_SPACING;
+    private int mAvatarDiameter;//尺寸未定时按此直径测量
+
+    private int mBorderWidth = RotateCircleAvatarDrawable.DEFAULT_BORDER_WIDTH;
+    private int mBorderPadding = RotateCircleAvatarDrawable.DEFAULT_BORDER_PADDING;
+    private int[] mBorderColors;
+    private BorderStyle mBorderStyle = BorderStyle.STILL;
+    private int mCircleBackgroundColor = RotateCircleAvatarDrawable.DEFAULT_CIRCLE_BACKGROUND_COLOR;
+
+    private boolean mLayoutDirty = true;
+    private boolean mBorderAnimating;
+    private boolean mBorderAnimationAllowed = true;
+    private boolean mScreenOn = true;
+    private final BorderAnimationClock.Callback mBorderAnimationCallback = new BorderAnimationClock.Callback() {
+        @Override
+        public void onAnimationFrame(long frameTimeMillis) {
+            boolean changed = false;
+            for (int i = 0; i < mAvatars.size(); i++) {
+                changed |= mAvatars.get(i).advanceBorderAnimation(frameTimeMillis);
+            }
+            if (changed) {
+                invalidate();//所有头像共用一次刷新
+            }
+        }
+    };
+
+    public AvatarGroupView(Context context) {
+        super(context);
+        mAvatarDiameter = getDefaultAvatarDiameter();
+    }
+
+    public AvatarGroupView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public AvatarGroupView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        TypedArray typedArray = context.obtainStyledAttributes(attrs, R.styleable.AvatarGroupView, defStyle, 0);
+        try {
+            mLayout = typedArray.getInt(R.styleable.AvatarGroupView_rciv_group_layout, 0) == 1 ? Layout.GRID : Layout.OVERLAP;
+            mOverlap = checkOverlap(typedArray.getFloat(R.styleable.AvatarGroupView_rciv_group_overlap, DEFAULT_OVERLAP));
+            mMaxColumns = Math.max(1, typedArray.getInt(R.styleable.AvatarGroupView_rciv_group_max_columns, DEFAULT_MAX_COLUMNS));
+            mSpacing = typedArray.getDimensionPixelSize(R.styleable.AvatarGroupView_rciv_group_spacing, DEFAULT_SPACING);
+            mAvatarDiameter = Math.max(0, typedArray.getDimensionPixelSize(R.styleable.AvatarGroupView_rciv_group_avatar_diameter,
+                    getDefaultAvatarDiameter()));
+            mBorderWidth = typedArray.getDimensionPixelSize(R.styleable.AvatarGroupView_rciv_border_width, mBorderWidth);
+            mBorderPadding = typedArray.getDimensionPixelSize(R.styleable.AvatarGroupView_rciv_border_padding, mBorderPadding);
+            mCircleBackgroundColor = typedArray.getColor(R.styleable.AvatarGroupView_rciv_circle_background_color, mCircleBackgroundColor);
+            mBorderStyle = typedArray.getInt(R.styleable.AvatarGroupView_rciv_border_style, 0) == 1 ? BorderStyle.ROTATE : BorderStyle.STILL;
+            final int borderColorsId = typedArray.getResourceId(R.styleable.AvatarGroupView_rciv_border_colors, 0);
+            if (borderColorsId != 0) {
+                mBorderColors = getResources().getIntArray(borderColorsId);
+            }
+        } finally {
+            typedArray.recycle();
+        }
+    }
+
+    /**
+     * Replaces the avatars. Null entries are drawn as empty circles.
+     */
+    public void setAvatarBitmaps(List<Bitmap> bitmaps) {
+        int count = bitmaps != null ? bitmaps.size() : 0;
+        setAvatarCount(count);
+        mRasterizedDrawables.clear();
+        mRasterizedReleased = false;
+        for (int i = 0; i < count; i++) {
+            mAvatars.get(i).setBitmap(bitmaps.get(i));
+        }
+        releaseRasterizedBitmaps(mRasterizedBitmaps.size());
+    }
+
+    /**
+     * Replaces the avatars, rasterizing drawables that are not BitmapDrawables once.
+     */
+    public void setAvatarDrawables(List<? extends Drawable> drawables) {
+        int count = drawables != null ? drawables.size() : 0;
+        setAvatarCount(count);
+        int released = mRasterizedBitmaps.size();
+        mRasterizedDrawables.clear();
+        mRasterizedReleased = false;
+        for (int i = 0; i < count; i++) {
+            Drawable drawable = drawables.get(i);
+            boolean rasterize = drawable != null && !(drawable instanceof BitmapDrawable);
+            mRasterizedDrawables.add(rasterize ? drawable : null);
+            if (rasterize) {
+                rasterizeAvatar(i);
+            } else {
+                mAvatars.get(i).setBitmap(RotateCircleImageView.getBitmapFromDrawable(drawable, null));
+            }
+        }
+        releaseRasterizedBitmaps(released);
+    }
+
+    private void rasterizeAvatar(int index) {
+        Bitmap bitmap = RotateCircleImageView.getBitmapFromDrawable(mRasterizedDrawables.get(index), null);
+        mAvatars.get(index).setBitmap(bitmap);
+        if (bitmap != null) {
+            mRasterizedBitmaps.add(bitmap);
+        }
+    }
+
+    /**
+     * Hands the rasterized bitmaps back to the pool while the view is detached, after their avatars stopped drawing
+     * them, like {@link RotateCircleImageView} does with its own.
+     */
+    private void releaseRasterizedAvatars() {
+        if (mRasterizedBitmaps.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < mRasterizedDrawables.size(); i++) {
+            if (mRasterizedDrawables.get(i) != null) {
+                mAvatars.get(i).setBitmap(null);
+            }
+        }
+        releaseRasterizedBitmaps(mRasterizedBitmaps.size());
+        mRasterizedReleased = true;
+    }
+
+    private void restoreRasterizedAvatars() {
+        if (!mRasterizedReleased) {
+            return;
+        }
+        mRasterizedReleased = false;
+        for (int i = 0; i < mRasterizedDrawables.size(); i++) {
+            if (mRasterizedDrawables.get(i) != null) {
+                rasterizeAvatar(i);
+            }
+        }
+    }
+
+    /**
+     * Returns the first {@code count} rasterized bitmaps, which no avatar draws any more, to the pool.
+     */
+    private void releaseRasterizedBitmaps(int count) {
+        for (int i = 0; i < count; i++) {
+            BitmapPool.put(mRasterizedBitmaps.get(i));
+        }
+        mRasterizedBitmaps.subList(0, count).clear();
+    }
+
+    public int getAvatarCount() {
+        return mAvatars.size();
+    }
+
+    /**
+     * The drawable of one avatar, e.g. to give it its own border. Its bounds and animation are managed by the view.
+     */
+    public RotateCircleAvatarDrawable getAvatarDrawable(int index) {
+        return mAvatars.get(index);
+    }
+
+    private void setAvatarCount(int count) {
+        if (count == mAvatars.size()) {
+            return;
+        }
+        while (mAvatars.size() > count) {
+            RotateCircleAvatarDrawable avatar = mAvatars.remove(mAvatars.size() - 1);
+            avatar.stop();
+            avatar.setCallback(null);
+        }
+        while (mAvatars.size() < count) {
+            RotateCircleAvatarDrawable avatar = new RotateCircleAvatarDrawable();
+            applyStyle(avatar);
+            avatar.setBorderAnimationAllowed(mBorderAnimationAllowed);
+            avatar.setCallback(this);
+            if (mBorderAnimating) {
+                avatar.startBorderAnimation();
+            }
+            mAvatars.add(avatar);
+        }
+        mLayoutDirty = true;
+        updateBorderAnimation();
+        requestLayout();
+        invalidate();
+    }
+
+    private void applyStyle(RotateCircleAvatarDrawable avatar) {
+        avatar.setBorderWidth(mBorderWidth);
+        avatar.setBorderPadding(mBorderPadding);
+        avatar.setCircleBackgroundColor(mCircleBackgroundColor);
+        avatar.setBorderStyle(mBorderStyle);
+        if (mBorderColors != null) {
+            avatar.setBorderColors(mBorderColors);
+        }
+    }
+
+    public Layout getLayout() {
+        return mLayout;
+    }
+
+    public void setLayout(Layout layout) {
+        if (layout == mLayout) {
+            return;
+        }
+        mLayout = layout;
+        invalidateLayout();
+    }
+
+    public float getOverlap() {
+        return mOverlap;
+    }
+
+    /**
+     * Sets the fraction of each avatar's diameter covered by the next one in {@link Layout#OVERLAP}, in [0, 1).
+     * Defaults to 0.3f.
+     */
+    public void setOverlap(float overlap) {
+        if (overlap == mOverlap) {
+            return;
+        }
+        mOverlap = checkOverlap(overlap);
+        invalidateLayout();
+    }
+
+    private static float checkOverlap(float overlap) {
+        if (!(overlap >= 0f && overlap < 1f)) {//不小于1时每个头像的步进为0或负数
+            throw new IllegalArgumentException(String.format("Overlap %s must be in [0, 1).", overlap));
+        }
+        return overlap;
+    }
+
+    public int getMaxColumns() {
+        return mMaxColumns;
+    }
+
+    /**
+     * Sets how many avatars a {@link Layout#GRID} row holds. Defaults to 3.
+     */
+    public void setMaxColumns(int maxColumns) {
+        maxColumns = Math.max(1, maxColumns);
+        if (maxColumns == mMaxColumns) {
+            return;
+        }
+        mMaxColumns = maxColumns;
+        invalidateLayout();
+    }
+
+    public int getSpacing() {
+        return mSpacing;
+    }
+
+    /**
+     * Sets the gap between {@link Layout#GRID} cells.
+     */
+    public void setSpacing(int spacing) {
+        if (spacing == mSpacing) {
+            return;
+        }
+        mSpacing = spacing;
+        invalidateLayout();
+    }
+
+    public int getAvatarDiameter() {
+        return mAvatarDiameter;
+    }
+
+    /**
+     * Sets the diameter the view measures its avatars at when its size is not exact, i.e. the height of a
+     * wrap_content {@link Layout#OVERLAP} row or the cell width of a wrap_content {@link Layout#GRID}. Defaults to
+     * 40dp.
+     */
+    public void setAvatarDiameter(int avatarDiameter) {
+        avatarDiameter = Math.max(0, avatarDiameter);
+        if (avatarDiameter == mAvatarDiameter) {
+            return;
+        }
+        mAvatarDiameter = avatarDiameter;
+        invalidateLayout();
+    }
+
+    private int getDefaultAvatarDiameter() {
+        return Math.round(DEFAULT_AVATAR_DIAMETER_DP * getResources().getDisplayMetrics().density);
+    }
+
+    public void setBorderWidth(int borderWidth) {
+        mBorderWidth = borderWidth;
+        for (int i = 0; i < mAvatars.size(); i++) {
+            mAvatars.get(i).setBorderWidth(borderWidth);
+        }
+    }
+
+    public void setBorderPadding(int borderPadding) {
+        mBorderPadding = borderPadding;
+        for (int i = 0; i < mAvatars.size(); i++) {
+            mAvatars.get(i).setBorderPadding(borderPadding);
+        }
+    }
+
+    public void setBorderColors(int[] borderColors) {
+        mBorderColors = borderColors != null ? borderColors.clone() : null;
+        for (int i = 0; i < mAvatars.size(); i++) {
+            mAvatars.get(i).setBorderColors(borderColors);
+        }
+    }
+
+    public void setCircleBackgroundColor(int circleBackgroundColor) {
+        mCircleBackgroundColor = circleBackgroundColor;
+        for (int i = 0; i < mAvatars.size(); i++) {
+            mAvatars.get(i).setCircleBackgroundColor(circleBackgroundColor);
+        }
+    }
+
+    public BorderStyle getBorderStyle() {
+        return mBorderStyle;
+    }
+
+    public void setBorderStyle(BorderStyle borderStyle) {
+        if (borderStyle == mBorderStyle) {
+            return;
+        }
+        mBorderStyle = borderStyle;
+        for (int i = 0; i < mAvatars.size(); i++) {
+            mAvatars.get(i).setBorderStyle(borderStyle);
+        }
+        stopBorderAnimation();//重新开始，让各头像的相位保持一致
+        updateBorderAnimation();
+    }
+
+    private void invalidateLayout() {
+        mLayoutDirty = true;
+        requestLayout();
+        invalidate();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int count = mAvatars.size();
+        int paddingWidth = getPaddingLeft() + getPaddingRight();
+        int paddingHeight = getPaddingTop() + getPaddingBottom();
+        if (count == 0) {
+            setMeasuredDimension(resolveSize(paddingWidth, widthMeasureSpec), resolveSize(paddingHeight, heightMeasureSpec));
+            return;
+        }
+        if (mLayout == Layout.OVERLAP) {
+            //以高度为直径横向排列，高度未定时取默认直径
+            int height = resolveSize(mAvatarDiameter + paddingHeight, heightMeasureSpec);
+            int diameter = Math.max(0, height - paddingHeight);
+            int width = Math.round(diameter + (count - 1) * diameter * (1 - mOverlap)) + paddingWidth;
+            setMeasuredDimension(resolveSize(width, widthMeasureSpec), height);
+        } else {
+            //以宽度为准排成正方形格子，宽度未定时取默认直径
+            int columns = Math.min(count, mMaxColumns);
+            int width = resolveSize(columns * mAvatarDiameter + (columns - 1) * mSpacing + paddingWidth, widthMeasureSpec);
+            int rows = (count + columns - 1) / columns;
+            int cell = Math.max(0, (width - paddingWidth - (columns - 1) * mSpacing) / columns);
+            int height = rows * cell + (rows - 1) * mSpacing + paddingHeight;
+            setMeasuredDimension(width, resolveSize(height, heightMeasureSpec));
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        mLayoutDirty = true;
+    }
+
+    private void layoutAvatars() {
+        mLayoutDirty = false;
+        int count = mAvatars.size();
+        if (count == 0) {
+            return;
+        }
+        int left = getPaddingLeft();
+        int top = getPaddingTop();
+        int availableWidth = getWidth() - left - getPaddingRight();
+        int availableHeight = getHeight() - top - getPaddingBottom();
+        if (mLayout == Layout.OVERLAP) {
+            float step = 1 - mOverlap;
+            int diameter = (int) Math.min(availableHeight, availableWidth / (1 + (count - 1) * step));
+            for (int i = 0; i < count; i++) {
+                int x = left + Math.round(i * diameter * step);
+                mAvatars.get(i).setBounds(x, top, x + diameter, top + diameter);
+            }
+        } else {
+            int columns = Math.min(count, mMaxColumns);
+            int rows = (count + columns - 1) / columns;
+            int cell = Math.min((availableWidth - (columns - 1) * mSpacing) / columns,
+                    (availableHeight - (rows - 1) * mSpacing) / rows);
+            for (int i = 0; i < count; i++) {
+                int x = left + (i % columns) * (cell + mSpacing);
+                int y = top + (i / columns) * (cell + mSpacing);
+                mAvatars.get(i).setBounds(x, y, x + cell, y + cell);
+            }
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mLayoutDirty) {
+            layoutAvatars();
+        }
+        for (int i = 0; i < mAvatars.size(); i++) {
+            mAvatars.get(i).draw(canvas);
+        }
+    }
+
+    @Override
+    protected boolean verifyDrawable(Drawable who) {
+        return (who instanceof RotateCircleAvatarDrawable && mAvatars.contains(who)) || super.verifyDrawable(who);
+    }
+
+    private boolean hasRotatingBorder() {
+        for (int i = 0; i < mAvatars.size(); i++) {
+            if (mAvatars.get(i).getBorderStyle() == BorderStyle.ROTATE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void updateBorderAnimation() {
+        if (mScreenOn && mBorderAnimationAllowed && getWindowToken() != null && getWindowVisibility() == View.VISIBLE
+                && isShown() && hasRotatingBorder()) {
+            startBorderAnimation();
+        } else {
+            stopBorderAnimation();//不可见时停止动画，避免过度绘制
+        }
+    }
+
+    private void startBorderAnimation() {
+        if (mBorderAnimating) {
+            return;
+        }
+        mBorderAnimating = true;
+        for (int i = 0; i < mAvatars.size(); i++) {
+            mAvatars.get(i).startBorderAnimation();
+        }
+        BorderAnimationClock.getInstance().addCallback(mBorderAnimationCallback);
+    }
+
+    private void stopBorderAnimation() {
+        if (!mBorderAnimating) {
+            return;
+        }
+        mBorderAnimating = false;
+        BorderAnimationClock.getInstance().removeCallback(mBorderAnimationCallback);
+        for (int i = 0; i < mAvatars.size(); i++) {
+            mAvatars.get(i).stop();
+        }
+    }
+
+    private void refreshBorderAnimationAllowed() {
+        mBorderAnimationAllowed = BorderAnimationClock.areAnimationsAllowed(getContext(),
+                RotateCircleAvatarDrawable.sBorderFrameRateAdaptive);
+        for (int i = 0; i < mAvatars.size(); i++) {
+            mAvatars.get(i).setBorderAnimationAllowed(mBorderAnimationAllowed);
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        restoreRasterizedAvatars();
+        refreshBorderAnimationAllowed();
+        updateBorderAnimation();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        stopBorderAnimation();
+        releaseRasterizedAvatars();
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        if (mAvatars != null) {
+            updateBorderAnimation();//父类构造函数中可能被调用
+        }
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        if (visibility == View.VISIBLE) {
+            refreshBorderAnimationAllowed();
+        }
+        updateBorderAnimation();
+    }
+
+    @Override
+    public void onScreenStateChanged(int screenState) {
+        super.onScreenStateChanged(screenState);
+        mScreenOn = screenState == SCREEN_STATE_ON;
+        updateBorderAnimation();
+    }
+}
@@ -0,0 +1,414 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decodes and downsamples avatars on a small pool of background threads, and hands the result back on the main
+ * thread unless the request has been cancelled in the meantime.
+ *
+ * @author vincanyang
+ */
+final class AvatarLoader {
+
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final int POOL_SIZE = Math.max(2, Math.min(CPU_COUNT - 1, 4));
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final int PRIORITY_VISIBLE = 0;
+    private static final int PRIORITY_PREFETCH = 1;
+    private static final AtomicLong sSequence = new AtomicLong();
+
+    private static final ThreadPoolExecutor sExecutor;
+
+    static {
+        sExecutor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "RotateCircleImageView #" + mCount.getAndIncrement());
+            }
+        });
+        sExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    //尚未结束的预取，同一头像的可见加载直接接手，不再重复解码
+    private static final HashMap<AvatarCache.Key, Request> sPrefetches = new HashMap<AvatarCache.Key, Request>();
+
+    interface Callback {
+        /**
+         * Called on the main thread.
+         *
+         * @param bitmap the decoded bitmap, or null if the source could not be decoded
+         */
+        void onLoaded(Bitmap bitmap);
+    }
+
+    private AvatarLoader() {
+    }
+
+    /**
+     * Starts decoding the key's source so that it covers the key's target size times its margin. The result is also
+     * put into the {@link AvatarCache}.
+     * <p>
+     * If the same key is being prefetched, a prefetch that has not started yet is replaced by this load, which runs
+     * ahead of the other prefetches, and a running one delivers its result to this load instead of decoding twice.
+     */
+    static Request load(Context context, AvatarCache.Key key, Callback callback) {
+        Request request = new Request(context.getApplicationContext(), key, PRIORITY_VISIBLE, callback);
+        synchronized (sPrefetches) {
+            Request prefetch = sPrefetches.get(key);
+            if (prefetch != null) {
+                if (!sExecutor.remove(prefetch)) {
+                    prefetch.mFollowers.add(request);//预取已在解码，等它的结果
+                    return request;
+                }
+                sPrefetches.remove(key);
+                prefetch.mDone = true;//排队中的预取由这次加载代替，结果同样进缓存
+            }
+        }
+        sExecutor.execute(request);
+        return request;
+    }
+
+    /**
+     * Like {@link #load(Context, AvatarCache.Key, Callback)} but only warms the {@link AvatarCache}, and runs after
+     * every queued visible load.
+     */
+    static Request prefetch(Context context, AvatarCache.Key key) {
+        Request request = new Request(context.getApplicationContext(), key, PRIORITY_PREFETCH, null);
+        synchronized (sPrefetches) {
+            if (!sPrefetches.containsKey(key)) {
+                sPrefetches.put(key, request);
+            }
+        }
+        sExecutor.execute(request);
+        return request;
+    }
+
+    static final class Source {
+        final Uri mUri;
+        final int mResId;
+
+        private Source(Uri uri, int resId) {
+            mUri = uri;
+            mResId = resId;
+        }
+
+        static Source of(Uri uri) {
+            return new Source(uri, 0);
+        }
+
+        static Source of(int resId) {
+            return new Source(null, resId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Source)) {
+                return false;
+            }
+            Source source = (Source) o;
+            return mResId == source.mResId && (mUri != null ? mUri.equals(source.mUri) : source.mUri == null);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (mUri != null ? mUri.hashCode() : 0) + mResId;
+        }
+
+        @Override
+        public String toString() {
+            return mUri != null ? mUri.toString() : "res:" + mResId;
+        }
+    }
+
+    static final class Request implements Runnable, Comparable<Request> {
+        private final Context mContext;
+        private final AvatarCache.Key mKey;
+        private final int mPriority;
+        private final long mSequence = sSequence.getAndIncrement();
+        private final Source mSource;
+        private final int mTargetWidth;
+        private final int mTargetHeight;
+        private final float mMargin;
+        private final Callback mCallback;
+        private final List<Request> mFollowers = new ArrayList<Request>();//由sPrefetches加锁保护
+        private volatile boolean mCancelled;
+        private volatile boolean mDone;
+
+        private Request(Context context, AvatarCache.Key key, int priority, Callback callback) {
+            mContext = context;
+            mKey = key;
+            mPriority = priority;
+            mSource = key.mSource;
+            mTargetWidth = key.mWidth;
+            mTargetHeight = key.mHeight;
+            mMargin = key.mMargin;
+            mCallback = callback;
+        }
+
+        /**
+         * Must be called on the main thread, after which the callback is guaranteed not to run.
+         */
+        void cancel() {
+            if (mPriority == PRIORITY_PREFETCH) {
+                synchronized (sPrefetches) {
+                    if (!mFollowers.isEmpty()) {
+                        return;//可见加载在等这次预取的结果，继续解码
+                    }
+                    if (sPrefetches.get(mKey) == this) {
+                        sPrefetches.remove(mKey);
+                    }
+                    mCancelled = true;
+                }
+            } else {
+                mCancelled = true;
+            }
+            if (sExecutor.remove(this)) {
+                mDone = true;//不会再运行
+            }
+        }
+
+        /**
+         * @return whether the request has finished, or has been cancelled before it started
+         */
+        boolean isDone() {
+            return mDone;
+        }
+
+        @Override
+        public int compareTo(Request another) {
+            if (mPriority != another.mPriority) {
+                return mPriority < another.mPriority ? -1 : 1;
+            }
+            return mSequence < another.mSequence ? -1 : (mSequence == another.mSequence ? 0 : 1);//同优先级先进先出
+        }
+
+        @Override
+        public void run() {
+            Bitmap bitmap = null;
+            try {
+                bitmap = load();
+            } finally {
+                if (mPriority == PRIORITY_PREFETCH) {
+                    finishPrefetch(bitmap);
+                }
+                mDone = true;
+            }
+        }
+
+        /**
+         * Hands the result over to the visible loads that joined this prefetch while it was running.
+         */
+        private void finishPrefetch(Bitmap bitmap) {
+            List<Request> followers;
+            synchronized (sPrefetches) {
+                if (sPrefetches.get(mKey) == this) {
+                    sPrefetches.remove(mKey);
+                }
+                followers = new ArrayList<Request>(mFollowers);
+                mFollowers.clear();
+            }
+            if (bitmap == null && !followers.isEmpty()) {
+                bitmap = AvatarCache.peek(mKey);//已被别的请求解码
+            }
+            for (Request follower : followers) {
+                follower.deliver(bitmap);
+                follower.mDone = true;
+            }
+        }
+
+        private Bitmap load() {
+            if (mCancelled) {
+                return null;
+            }
+            if (mCallback == null && AvatarCache.peek(mKey) != null) {
+                return null;
+            }
+            Bitmap bitmap = null;
+            try {
+                bitmap = decode();
+            } catch (Exception e) {
+                e.printStackTrace();
+            } catch (OutOfMemoryError e) {
+                e.printStackTrace();
+            }
+            if (bitmap != null) {
+                AvatarCache.put(mKey, bitmap);
+            }
+            if (mCallback != null) {
+                deliver(bitmap);
+            }
+            return bitmap;
+        }
+
+        private void deliver(Bitmap bitmap) {
+            if (mCancelled) {
+                return;
+            }
+            if (bitmap != null) {
+                bitmap.prepareToDraw();//在后台线程提前上传纹理，避免首帧卡顿；预取的图不占用纹理缓存
+            }
+            final Bitmap result = bitmap;
+            sMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mCancelled) {
+                        mCallback.onLoaded(result);
+                    }
+                }
+            });
+        }
+
+        private Bitmap decode() throws IOException {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            decodeSource(options);
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                return rasterizeDrawable();
+            }
+            options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight);
+            options.inPreferredConfig = mKey.mConfig != null ? mKey.mConfig
+                    : RotateCircleImageView.resolveBitmapConfig(null, !"image/jpeg".equals(options.outMimeType));//JPEG没有透明通道
+            options.inJustDecodeBounds = false;
+            if (mCancelled) {
+                return null;
+            }
+            return toPreferredConfig(scale(decodeSource(options)));
+        }
+
+        /**
+         * Decoders may ignore RGB_565 for formats that can carry alpha, so images that turned out opaque are
+         * converted afterwards when the config is picked automatically.
+         */
+        private Bitmap toPreferredConfig(Bitmap bitmap) {
+            if (bitmap == null || mKey.mConfig != null || bitmap.hasAlpha()
+                    || bitmap.getConfig() == Bitmap.Config.RGB_565) {
+                return bitmap;
+            }
+            Bitmap converted = bitmap.copy(Bitmap.Config.RGB_565, false);
+            return converted != null ? converted : bitmap;
+        }
+
+        private Bitmap decodeSource(BitmapFactory.Options options) throws IOException {
+            if (mSource.mUri == null) {
+                return BitmapFactory.decodeResource(mContext.getResources(), mSource.mResId, options);
+            }
+            InputStream in = mContext.getContentResolver().openInputStream(mSource.mUri);
+            if (in == null) {
+                return null;
+            }
+            try {
+                return BitmapFactory.decodeStream(in, null, options);
+            } finally {
+                in.close();
+            }
+        }
+
+        /**
+         * Fallback for resources that are not bitmaps, e.g. shape or vector drawables.
+         */
+        private Bitmap rasterizeDrawable() {
+            if (mSource.mUri != null) {
+                return null;
+            }
+            Drawable drawable = mContext.getResources().getDrawable(mSource.mResId);
+            if (drawable instanceof BitmapDrawable) {
+                return scale(((BitmapDrawable) drawable).getBitmap());
+            }
+            int width = drawable.getIntrinsicWidth() > 0 ? drawable.getIntrinsicWidth() : mTargetWidth;
+            int height = drawable.getIntrinsicHeight() > 0 ? drawable.getIntrinsicHeight() : mTargetHeight;
+            float scale = Math.min(1f, getScale(width, height));
+            width = Math.max(1, (int) Math.ceil(width * scale));
+            height = Math.max(1, (int) Math.ceil(height * scale));
+            Bitmap bitmap = Bitmap.createBitmap(width, height,
+                    RotateCircleImageView.resolveBitmapConfig(mKey.mConfig, drawable.getOpacity() != PixelFormat.OPAQUE));
+            Canvas canvas = new Canvas(bitmap);
+            drawable.setBounds(0, 0, width, height);
+            drawable.draw(canvas);
+            return bitmap;
+        }
+
+        private int calculateInSampleSize(int width, int height) {
+            int inSampleSize = 1;
+            while (getScale(width / (inSampleSize * 2), height / (inSampleSize * 2)) <= 1f) {
+                inSampleSize *= 2;
+            }
+            return inSampleSize;
+        }
+
+        private Bitmap scale(Bitmap bitmap) {
+            if (bitmap == null) {
+                return null;
+            }
+            float scale = getScale(bitmap.getWidth(), bitmap.getHeight());
+            if (scale >= 1f) {
+                return bitmap;
+            }
+            int width = Math.max(1, (int) Math.ceil(bitmap.getWidth() * scale));
+            int height = Math.max(1, (int) Math.ceil(bitmap.getHeight() * scale));
+            return Bitmap.createScaledBitmap(bitmap, width, height, true);
+        }
+
+        /**
+         * The center-crop scale that makes {@code width x height} cover the target, including the margin.
+         */
+        private float getScale(int width, int height) {
+            if (width <= 0 || height <= 0) {
+                return Float.MAX_VALUE;
+            }
+            float margin = mMargin > 0 ? mMargin : 1f;
+            return Math.max((float) mTargetWidth / width, (float) mTargetHeight / height) * margin;
+        }
+    }
+}
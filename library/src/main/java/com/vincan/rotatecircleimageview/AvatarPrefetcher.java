@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview;
+
+import android.content.Context;
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Warms the {@link AvatarCache} for avatars that are about to be bound, e.g. the next page of a list, so that
+ * {@link RotateCircleImageView#loadImageURI(Uri)}, {@link RotateCircleImageView#loadImageResource(int)} and the
+ * synchronous setters find them ready. Prefetches run on the same background threads as visible loads, but always
+ * after them, and a bind of an avatar that is still being prefetched takes the prefetch over instead of decoding it a
+ * second time. An entry is only found by views with the same avatar size, quality margin and bitmap config, so pass a
+ * laid out view configured like the ones that will bind the avatars.
+ *
+ * <pre>
+ * AvatarPrefetcher prefetcher = AvatarPrefetcher.prefetch(context, nextUris, avatarView);
+ * ...
+ * prefetcher.cancel();
+ * </pre>
+ *
+ * @author vincanyang
+ */
+public final class AvatarPrefetcher {
+
+    private final List<AvatarLoader.Request> mRequests;
+
+    private AvatarPrefetcher(List<AvatarLoader.Request> requests) {
+        mRequests = requests;
+    }
+
+    /**
+     * @param view a laid out view whose avatar size, quality margin and bitmap config the avatars are decoded for
+     */
+    public static AvatarPrefetcher prefetch(Context context, List<Uri> uris, RotateCircleImageView view) {
+        return prefetchSources(context, toSources(uris), checkLaidOut(view), 0);
+    }
+
+    /**
+     * Like {@link #prefetch(Context, List, RotateCircleImageView)}, for views that keep the default quality margin
+     * and bitmap config.
+     *
+     * @param diameter the diameter of the displayed circle, see {@link RotateCircleImageView#getAvatarDiameter()}
+     */
+    public static AvatarPrefetcher prefetch(Context context, List<Uri> uris, int diameter) {
+        return prefetchSources(context, toSources(uris), null, diameter);
+    }
+
+    /**
+     * @param view a laid out view whose avatar size, quality margin and bitmap config the avatars are decoded for
+     */
+    public static AvatarPrefetcher prefetchResources(Context context, int[] resIds, RotateCircleImageView view) {
+        return prefetchSources(context, toSources(resIds), checkLaidOut(view), 0);
+    }
+
+    /**
+     * Like {@link #prefetchResources(Context, int[], RotateCircleImageView)}, for views that keep the default quality
+     * margin and bitmap config.
+     *
+     * @param diameter the diameter of the displayed circle, see {@link RotateCircleImageView#getAvatarDiameter()}
+     */
+    public static AvatarPrefetcher prefetchResources(Context context, int[] resIds, int diameter) {
+        return prefetchSources(context, toSources(resIds), null, diameter);
+    }
+
+    private static List<AvatarLoader.Source> toSources(List<Uri> uris) {
+        List<AvatarLoader.Source> sources = new ArrayList<AvatarLoader.Source>(uris.size());
+        for (Uri uri : uris) {
+            if (uri != null) {
+                sources.add(AvatarLoader.Source.of(uri));
+            }
+        }
+        return sources;
+    }
+
+    private static List<AvatarLoader.Source> toSources(int[] resIds) {
+        List<AvatarLoader.Source> sources = new ArrayList<AvatarLoader.Source>(resIds.length);
+        for (int resId : resIds) {
+            if (resId != 0) {
+                sources.add(AvatarLoader.Source.of(resId));
+            }
+        }
+        return sources;
+    }
+
+    private static RotateCircleImageView checkLaidOut(RotateCircleImageView view) {
+        if (view.getAvatarDiameter() <= 0) {
+            throw new IllegalArgumentException(String.format("%s has not been laid out yet.", view));
+        }
+        return view;
+    }
+
+    /**
+     * @param view the view to take the keys from, or null to use the defaults at {@code diameter}
+     */
+    private static AvatarPrefetcher prefetchSources(Context context, List<AvatarLoader.Source> sources,
+                                                    RotateCircleImageView view, int diameter) {
+        List<AvatarLoader.Request> requests = new ArrayList<AvatarLoader.Request>(sources.size());
+        for (AvatarLoader.Source source : sources) {
+            AvatarCache.Key key = view != null ? view.newAvatarCacheKey(source)
+                    : RotateCircleImageView.newAvatarCacheKey(source, diameter, diameter);
+            if (AvatarCache.peek(key) == null) {
+                requests.add(AvatarLoader.prefetch(context, key));
+            }
+        }
+        return new AvatarPrefetcher(requests);
+    }
+
+    /**
+     * Cancels every prefetch that has not started yet, after which {@link #isDone()} only waits for the running ones.
+     * Avatars already decoded stay in the cache.
+     */
+    public void cancel() {
+        for (AvatarLoader.Request request : mRequests) {
+            request.cancel();
+        }
+    }
+
+    /**
+     * @return whether every prefetch has finished or been cancelled
+     */
+    public boolean isDone() {
+        for (AvatarLoader.Request request : mRequests) {
+            if (!request.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.os.Process;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders circular avatars with a STILL border into bitmaps, without a view, e.g. for notification icons, launcher
+ * shortcuts or share targets. Thread-safe: every thread renders with its own {@link RotateCircleAvatarDrawable}, the
+ * border rings come from the shared cache and the output bitmaps from the shared pool. Only STILL borders are
+ * rendered, so no {@link RotationAtlas} is ever used; a ring missing from the cache is rendered while holding the
+ * cache's process-wide lock, which views drawing on the main thread wait for if they need the cache at that moment.
+ *
+ * @author vincanyang
+ */
+public final class AvatarRenderer {
+
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final int POOL_SIZE = Math.max(2, Math.min(CPU_COUNT, 4));
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final ThreadLocal<RotateCircleAvatarDrawable> sDrawables =
+            new ThreadLocal<RotateCircleAvatarDrawable>() {
+        @Override
+        protected RotateCircleAvatarDrawable initialValue() {
+            return new RotateCircleAvatarDrawable();
+        }
+    };
+
+    private static ThreadPoolExecutor sExecutor;
+
+    private AvatarRenderer() {
+    }
+
+    /**
+     * The look of rendered avatars, the same as the matching {@link RotateCircleImageView} attributes. Not
+     * thread-safe, {@link #renderAll(List, int, Options)} works on a copy.
+     */
+    public static final class Options {
+        private int mBorderWidth = RotateCircleAvatarDrawable.DEFAULT_BORDER_WIDTH;
+        private int mBorderPadding = RotateCircleAvatarDrawable.DEFAULT_BORDER_PADDING;
+        private int[] mBorderColors = new int[]{RotateCircleAvatarDrawable.DEFAULT_CIRCLE_COLOR};
+        private boolean mBorderOverlay = RotateCircleAvatarDrawable.DEFAULT_BORDER_OVERLAY;
+        private int mCircleBackgroundColor = RotateCircleAvatarDrawable.DEFAULT_CIRCLE_BACKGROUND_COLOR;
+
+        public Options() {
+        }
+
+        private Options(Options options) {
+            mBorderWidth = options.mBorderWidth;
+            mBorderPadding = options.mBorderPadding;
+            mBorderColors = options.mBorderColors;
+            mBorderOverlay = options.mBorderOverlay;
+            mCircleBackgroundColor = options.mCircleBackgroundColor;
+        }
+
+        public int getBorderWidth() {
+            return mBorderWidth;
+        }
+
+        public void setBorderWidth(int borderWidth) {
+            mBorderWidth = borderWidth;
+        }
+
+        public int getBorderPadding() {
+            return mBorderPadding;
+        }
+
+        public void setBorderPadding(int borderPadding) {
+            mBorderPadding = borderPadding;
+        }
+
+        public int[] getBorderColors() {
+            return mBorderColors.clone();
+        }
+
+        public void setBorderColors(int[] borderColors) {
+            if (borderColors != null && borderColors.length > 0) {
+                mBorderColors = borderColors.clone();
+            }
+        }
+
+        public boolean isBorderOverlay() {
+            return mBorderOverlay;
+        }
+
+        public void setBorderOverlay(boolean borderOverlay) {
+            mBorderOverlay = borderOverlay;
+        }
+
+        public int getCircleBackgroundColor() {
+            return mCircleBackgroundColor;
+        }
+
+        public void setCircleBackgroundColor(int circleBackgroundColor) {
+            mCircleBackgroundColor = circleBackgroundColor;
+        }
+    }
+
+    /**
+     * @see #render(Bitmap, int, Options, Bitmap)
+     */
+    public static Bitmap render(Bitmap source, int diameter, Options options) {
+        return render(source, diameter, options, null);
+    }
+
+    /**
+     * Renders one avatar on the calling thread, which can be any thread.
+     *
+     * @param source the avatar image, center-cropped into the circle; null renders only the background and border
+     * @param output a {@code diameter x diameter} mutable ARGB_8888 bitmap to render into, e.g. the result of a
+     *               previous render, or null to take one from the pool
+     * @return the rendered avatar, or null if no bitmap could be allocated
+     */
+    public static Bitmap render(Bitmap source, int diameter, Options options, Bitmap output) {
+        if (diameter <= 0) {
+            throw new IllegalArgumentException(String.format("Diameter %d must be positive.", diameter));
+        }
+        Bitmap bitmap;
+        if (output != null && output.isMutable() && output.getWidth() == diameter && output.getHeight() == diameter
+                && output.getConfig() == Bitmap.Config.ARGB_8888) {
+            bitmap = output;
+            bitmap.eraseColor(Color.TRANSPARENT);
+        } else {
+            try {
+                bitmap = BitmapPool.get(diameter, diameter, Bitmap.Config.ARGB_8888);
+            } catch (OutOfMemoryError e) {
+                return null;
+            }
+        }
+        RotateCircleAvatarDrawable drawable = sDrawables.get();
+        drawable.setBorderWidth(options.mBorderWidth);
+        drawable.setBorderPadding(options.mBorderPadding);
+        drawable.setBorderColors(options.mBorderColors);
+        drawable.setBorderOverlay(options.mBorderOverlay);
+        drawable.setCircleBackgroundColor(options.mCircleBackgroundColor);
+        drawable.setBounds(0, 0, diameter, diameter);
+        drawable.setBitmap(source);
+        try {
+            drawable.draw(new Canvas(bitmap));
+        } finally {
+            drawable.setBitmap(null);//不让线程持有调用方的原图
+        }
+        return bitmap;
+    }
+
+    /**
+     * Renders the sources in parallel on a small pool of background threads and waits for all of them, so it must
+     * not be called on the main thread.
+     *
+     * @return the rendered avatars in the order of {@code sources}, null where no bitmap could be allocated
+     */
+    public static List<Bitmap> renderAll(List<Bitmap> sources, final int diameter, Options options)
+            throws InterruptedException {
+        final Options snapshot = new Options(options);
+        List<Callable<Bitmap>> tasks = new ArrayList<Callable<Bitmap>>(sources.size());
+        for (final Bitmap source : sources) {
+            tasks.add(new Callable<Bitmap>() {
+                @Override
+                public Bitmap call() {
+                    return render(source, diameter, snapshot, null);
+                }
+            });
+        }
+        List<Future<Bitmap>> futures = getExecutor().invokeAll(tasks);
+        List<Bitmap> results = new ArrayList<Bitmap>(futures.size());
+        for (Future<Bitmap> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Hands a rendered avatar that is no longer used back, so that later renders reuse its pixels.
+     */
+    public static void recycle(Bitmap bitmap) {
+        BitmapPool.put(bitmap);
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger(1);
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, "AvatarRenderer #" + mCount.getAndIncrement());
+                }
+            });
+            sExecutor.allowCoreThreadTimeOut(true);
+        }
+        return sExecutor;
+    }
+}
@@ -0,0 +1,520 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.LinearGradient;
+import android.graphics.Rect;
+import android.graphics.Shader;
+import android.text.TextUtils;
+import android.util.AttributeSet;
+import android.util.SparseArray;
+
+import com.vincan.rotatecircleimageview.RotateCircleImageView.BorderStyle;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.WeakHashMap;
+
+/**
+ * An immutable set of {@link RotateCircleImageView} attributes that any number of views can share, built with a
+ * {@link Builder} or parsed from XML. Views inflated with the same attributes and theme share one parsed style, so
+ * large lists read their attributes once, and views of the same size share the style's track gradient.
+ *
+ * @author vincanyang
+ */
+public final class AvatarStyle {
+
+    private static final SparseArray<Bitmap.Config> sBitmapConfigArray = new SparseArray<Bitmap.Config>(3) {
+        {
+            append(0, null);
+            append(1, Bitmap.Config.ARGB_8888);
+            append(2, Bitmap.Config.RGB_565);
+        }
+    };
+
+    private static final SparseArray<BorderStyle> sBorderStyleArray = new SparseArray<BorderStyle>(2) {
+        {
+            append(0, BorderStyle.STILL);
+            append(1, BorderStyle.ROTATE);
+        }
+    };
+
+    //同一主题下按原始属性值缓存，主题回收后随之释放
+    private static final WeakHashMap<Resources.Theme, ThemeStyles> sCache =
+            new WeakHashMap<Resources.Theme, ThemeStyles>();
+    private static final Key sLookupKey = new Key();//查找时复用，只在sCache的锁内使用
+
+    final int mBorderWidth;
+    final int[] mBorderColors;
+    final boolean mBorderOverlay;
+    final boolean mAvatarPrecomposed;
+    final float mBitmapQualityMargin;
+    final Bitmap.Config mBitmapConfig;
+    final boolean mBitmapMipMap;
+    final int mPlaceholderColor;
+    final int mCircleBackgroundColor;
+    final int mBorderPadding;
+    final int mBorderTrackStartColor;
+    final int mBorderTrackEndColor;
+    final int mBorderTrackDuration;
+    final int mBorderRotateDuration;
+    final int mBorderFrameRate;
+    final boolean mBorderRotationAtlas;
+    final BorderStyle mBorderStyle;
+
+    private final Rect mTrackShaderBounds = new Rect();
+    private Shader mTrackShader;
+
+    private AvatarStyle(Builder builder) {
+        mBorderWidth = builder.mBorderWidth;
+        mBorderColors = builder.mBorderColors.clone();
+        mBorderOverlay = builder.mBorderOverlay;
+        mAvatarPrecomposed = builder.mAvatarPrecomposed;
+        mBitmapQualityMargin = builder.mBitmapQualityMargin;
+        mBitmapConfig = builder.mBitmapConfig;
+        mBitmapMipMap = builder.mBitmapMipMap;
+        mPlaceholderColor = builder.mPlaceholderColor;
+        mCircleBackgroundColor = builder.mCircleBackgroundColor;
+        mBorderPadding = builder.mBorderPadding;
+        mBorderTrackStartColor = builder.mBorderTrackStartColor;
+        mBorderTrackEndColor = builder.mBorderTrackEndColor;
+        mBorderTrackDuration = builder.mBorderTrackDuration;
+        mBorderRotateDuration = builder.mBorderRotateDuration;
+        mBorderFrameRate = builder.mBorderFrameRate;
+        mBorderRotationAtlas = builder.mBorderRotationAtlas;
+        mBorderStyle = builder.mBorderStyle;
+    }
+
+    /**
+     * Returns the style for the given XML attributes, parsing them only the first time the same raw attribute values
+     * are inflated in this theme. A lookup that hits allocates nothing of its own; only a miss copies the key.
+     */
+    static AvatarStyle obtain(Context context, AttributeSet attrs, int defStyleAttr) {
+        Resources.Theme theme = context.getTheme();
+        Configuration configuration = context.getResources().getConfiguration();
+        synchronized (sCache) {
+            ThemeStyles styles = sCache.get(theme);
+            if (styles != null && styles.mConfiguration.equals(configuration)) {
+                AvatarStyle style = styles.mStyles.get(sLookupKey.set(attrs, defStyleAttr));
+                if (style != null) {
+                    return style;
+                }
+            }
+        }
+        AvatarStyle style = parse(context, attrs, defStyleAttr);
+        synchronized (sCache) {
+            ThemeStyles styles = sCache.get(theme);
+            if (styles == null || !styles.mConfiguration.equals(configuration)) {
+                styles = new ThemeStyles(configuration);//配置变化后旧的解析结果作废
+                sCache.put(theme, styles);
+            }
+            styles.mStyles.put(sLookupKey.set(attrs, defStyleAttr).copy(), style);
+        }
+        return style;
+    }
+
+    private static AvatarStyle parse(Context context, AttributeSet attrs, int defStyleAttr) {
+        Builder builder = new Builder();
+        TypedArray typedArray = context.obtainStyledAttributes(attrs, R.styleable.RotateCircleImageView, defStyleAttr, 0);
+        try {
+            builder.setBorderWidth(typedArray.getDimensionPixelSize(R.styleable.RotateCircleImageView_rciv_border_width,
+                    builder.mBorderWidth));
+            builder.setBorderOverlay(typedArray.getBoolean(R.styleable.RotateCircleImageView_rciv_border_overlay,
+                    builder.mBorderOverlay));
+            builder.setAvatarPrecomposed(typedArray.getBoolean(R.styleable.RotateCircleImageView_rciv_avatar_precomposed,
+                    builder.mAvatarPrecomposed));
+            builder.setBitmapQualityMargin(typedArray.getFloat(R.styleable.RotateCircleImageView_rciv_bitmap_quality_margin,
+                    builder.mBitmapQualityMargin));
+            builder.setBitmapConfig(sBitmapConfigArray.get(typedArray.getInt(R.styleable.RotateCircleImageView_rciv_bitmap_config, 0)));
+            builder.setBitmapMipMap(typedArray.getBoolean(R.styleable.RotateCircleImageView_rciv_bitmap_mipmap,
+                    builder.mBitmapMipMap));
+            builder.setPlaceholderColor(typedArray.getColor(R.styleable.RotateCircleImageView_rciv_placeholder_color,
+                    builder.mPlaceholderColor));
+            builder.setCircleBackgroundColor(typedArray.getColor(R.styleable.RotateCircleImageView_rciv_circle_background_color,
+                    builder.mCircleBackgroundColor));
+            builder.setBorderPadding(typedArray.getDimensionPixelSize(R.styleable.RotateCircleImageView_rciv_border_padding,
+                    builder.mBorderPadding));
+            builder.setBorderTrackStartColor(typedArray.getColor(R.styleable.RotateCircleImageView_rciv_border_track_start_color,
+                    builder.mBorderTrackStartColor));
+            builder.setBorderTrackEndColor(typedArray.getColor(R.styleable.RotateCircleImageView_rciv_border_track_end_color,
+                    builder.mBorderTrackEndColor));
+            builder.setBorderTrackDuration(typedArray.getInt(R.styleable.RotateCircleImageView_rciv_border_track_duration,
+                    builder.mBorderTrackDuration));
+            builder.setBorderRotateDuration(typedArray.getInt(R.styleable.RotateCircleImageView_rciv_border_rotate_duration,
+                    builder.mBorderRotateDuration));
+            builder.setBorderFrameRate(typedArray.getInt(R.styleable.RotateCircleImageView_rciv_border_frame_rate,
+                    builder.mBorderFrameRate));
+            builder.setBorderRotationAtlas(typedArray.getBoolean(R.styleable.RotateCircleImageView_rciv_border_rotation_atlas,
+                    builder.mBorderRotationAtlas));
+            builder.setBorderStyle(sBorderStyleArray.get(typedArray.getInt(R.styleable.RotateCircleImageView_rciv_border_style,
+                    BorderStyle.STILL.ordinal())));
+            final int borderColorsId = typedArray.getResourceId(R.styleable.RotateCircleImageView_rciv_border_colors, 0);
+            if (borderColorsId != 0) {
+                builder.setBorderColors(context.getResources().getIntArray(borderColorsId));
+            }
+        } finally {
+            typedArray.recycle();
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return the track gradient for the given bounds, shared by every drawable of this style laid out in the same
+     * bounds
+     */
+    synchronized Shader getTrackShader(Rect bounds) {
+        if (mTrackShader == null || !mTrackShaderBounds.equals(bounds)) {
+            mTrackShader = new LinearGradient(bounds.left, bounds.top, bounds.right, bounds.bottom,
+                    mBorderTrackStartColor, mBorderTrackEndColor, Shader.TileMode.CLAMP);
+            mTrackShaderBounds.set(bounds);
+        }
+        return mTrackShader;
+    }
+
+    public int getBorderWidth() {
+        return mBorderWidth;
+    }
+
+    public int[] getBorderColors() {
+        return mBorderColors.clone();
+    }
+
+    public boolean isBorderOverlay() {
+        return mBorderOverlay;
+    }
+
+    public boolean isAvatarPrecomposed() {
+        return mAvatarPrecomposed;
+    }
+
+    public float getBitmapQualityMargin() {
+        return mBitmapQualityMargin;
+    }
+
+    public Bitmap.Config getBitmapConfig() {
+        return mBitmapConfig;
+    }
+
+    public boolean isBitmapMipMap() {
+        return mBitmapMipMap;
+    }
+
+    public int getPlaceholderColor() {
+        return mPlaceholderColor;
+    }
+
+    public int getCircleBackgroundColor() {
+        return mCircleBackgroundColor;
+    }
+
+    public int getBorderPadding() {
+        return mBorderPadding;
+    }
+
+    public int getBorderTrackStartColor() {
+        return mBorderTrackStartColor;
+    }
+
+    public int getBorderTrackEndColor() {
+        return mBorderTrackEndColor;
+    }
+
+    public int getBorderTrackDuration() {
+        return mBorderTrackDuration;
+    }
+
+    public int getBorderRotateDuration() {
+        return mBorderRotateDuration;
+    }
+
+    public int getBorderFrameRate() {
+        return mBorderFrameRate;
+    }
+
+    public boolean isBorderRotationAtlas() {
+        return mBorderRotationAtlas;
+    }
+
+    public BorderStyle getBorderStyle() {
+        return mBorderStyle;
+    }
+
+    /**
+     * Builds an {@link AvatarStyle}, starting from the defaults of {@link RotateCircleImageView} or from another
+     * style.
+     */
+    public static final class Builder {
+        private int mBorderWidth = RotateCircleAvatarDrawable.DEFAULT_BORDER_WIDTH;
+        private int[] mBorderColors = new int[]{RotateCircleAvatarDrawable.DEFAULT_CIRCLE_COLOR};
+        private boolean mBorderOverlay = RotateCircleAvatarDrawable.DEFAULT_BORDER_OVERLAY;
+        private boolean mAvatarPrecomposed = RotateCircleAvatarDrawable.DEFAULT_AVATAR_PRECOMPOSED;
+        private float mBitmapQualityMargin = RotateCircleImageView.DEFAULT_BITMAP_QUALITY_MARGIN;
+        private Bitmap.Config mBitmapConfig = RotateCircleImageView.DEFAULT_BITMAP_CONFIG;
+        private boolean mBitmapMipMap;
+        private int mPlaceholderColor = RotateCircleAvatarDrawable.DEFAULT_PLACEHOLDER_COLOR;
+        private int mCircleBackgroundColor = RotateCircleAvatarDrawable.DEFAULT_CIRCLE_BACKGROUND_COLOR;
+        private int mBorderPadding = RotateCircleAvatarDrawable.DEFAULT_BORDER_PADDING;
+        private int mBorderTrackStartColor = RotateCircleAvatarDrawable.DEFAULT_BORDER_TRACK_START_COLOR;
+        private int mBorderTrackEndColor = RotateCircleAvatarDrawable.DEFAULT_BORDER_TRACK_END_COLOR;
+        private int mBorderTrackDuration = RotateCircleAvatarDrawable.DEFAULT_BORDER_TRACK_DURATION;
+        private int mBorderRotateDuration = RotateCircleAvatarDrawable.DEFAULT_BORDER_ROTATE_DURATION;
+        private int mBorderFrameRate = RotateCircleAvatarDrawable.DEFAULT_BORDER_FRAME_RATE;
+        private boolean mBorderRotationAtlas = RotateCircleAvatarDrawable.DEFAULT_BORDER_ROTATION_ATLAS;
+        private BorderStyle mBorderStyle = BorderStyle.STILL;
+
+        public Builder() {
+        }
+
+        public Builder(AvatarStyle style) {
+            mBorderWidth = style.mBorderWidth;
+            mBorderColors = style.mBorderColors.clone();
+            mBorderOverlay = style.mBorderOverlay;
+            mAvatarPrecomposed = style.mAvatarPrecomposed;
+            mBitmapQualityMargin = style.mBitmapQualityMargin;
+            mBitmapConfig = style.mBitmapConfig;
+            mBitmapMipMap = style.mBitmapMipMap;
+            mPlaceholderColor = style.mPlaceholderColor;
+            mCircleBackgroundColor = style.mCircleBackgroundColor;
+            mBorderPadding = style.mBorderPadding;
+            mBorderTrackStartColor = style.mBorderTrackStartColor;
+            mBorderTrackEndColor = style.mBorderTrackEndColor;
+            mBorderTrackDuration = style.mBorderTrackDuration;
+            mBorderRotateDuration = style.mBorderRotateDuration;
+            mBorderFrameRate = style.mBorderFrameRate;
+            mBorderRotationAtlas = style.mBorderRotationAtlas;
+            mBorderStyle = style.mBorderStyle;
+        }
+
+        public Builder setBorderWidth(int borderWidth) {
+            mBorderWidth = borderWidth;
+            return this;
+        }
+
+        /**
+         * Ignored if null or empty, at most the first 50 colors are used.
+         */
+        public Builder setBorderColors(int[] borderColors) {
+            if (borderColors != null && borderColors.length > 0) {
+                mBorderColors = borderColors.clone();
+            }
+            return this;
+        }
+
+        public Builder setBorderOverlay(boolean borderOverlay) {
+            mBorderOverlay = borderOverlay;
+            return this;
+        }
+
+        public Builder setAvatarPrecomposed(boolean avatarPrecomposed) {
+            mAvatarPrecomposed = avatarPrecomposed;
+            return this;
+        }
+
+        public Builder setBitmapQualityMargin(float bitmapQualityMargin) {
+            mBitmapQualityMargin = bitmapQualityMargin;
+            return this;
+        }
+
+        /**
+         * @param bitmapConfig ARGB_8888, RGB_565 or null to pick one per image
+         */
+        public Builder setBitmapConfig(Bitmap.Config bitmapConfig) {
+            if (bitmapConfig != null && bitmapConfig != Bitmap.Config.ARGB_8888
+                    && bitmapConfig != Bitmap.Config.RGB_565) {
+                throw new IllegalArgumentException(String.format("Bitmap config %s not supported.", bitmapConfig));
+            }
+            mBitmapConfig = bitmapConfig;
+            return this;
+        }
+
+        public Builder setBitmapMipMap(boolean bitmapMipMap) {
+            mBitmapMipMap = bitmapMipMap;
+            return this;
+        }
+
+        public Builder setPlaceholderColor(int placeholderColor) {
+            mPlaceholderColor = placeholderColor;
+            return this;
+        }
+
+        public Builder setCircleBackgroundColor(int circleBackgroundColor) {
+            mCircleBackgroundColor = circleBackgroundColor;
+            return this;
+        }
+
+        public Builder setBorderPadding(int borderPadding) {
+            mBorderPadding = borderPadding;
+            return this;
+        }
+
+        public Builder setBorderTrackStartColor(int borderTrackStartColor) {
+            mBorderTrackStartColor = borderTrackStartColor;
+            return this;
+        }
+
+        public Builder setBorderTrackEndColor(int borderTrackEndColor) {
+            mBorderTrackEndColor = borderTrackEndColor;
+            return this;
+        }
+
+        public Builder setBorderTrackDuration(int borderTrackDuration) {
+            mBorderTrackDuration = borderTrackDuration;
+            return this;
+        }
+
+        public Builder setBorderRotateDuration(int borderRotateDuration) {
+            mBorderRotateDuration = borderRotateDuration;
+            return this;
+        }
+
+        public Builder setBorderFrameRate(int borderFrameRate) {
+            mBorderFrameRate = borderFrameRate;
+            return this;
+        }
+
+        public Builder setBorderRotationAtlas(boolean borderRotationAtlas) {
+            mBorderRotationAtlas = borderRotationAtlas;
+            return this;
+        }
+
+        public Builder setBorderStyle(BorderStyle borderStyle) {
+            if (borderStyle != null) {
+                mBorderStyle = borderStyle;
+            }
+            return this;
+        }
+
+        public AvatarStyle build() {
+            return new AvatarStyle(this);
+        }
+    }
+
+    /**
+     * The styles parsed in one theme, valid as long as the resources keep the configuration they were parsed in.
+     */
+    private static final class ThemeStyles {
+        private final Configuration mConfiguration;
+        private final HashMap<Key, AvatarStyle> mStyles = new HashMap<Key, AvatarStyle>();
+
+        ThemeStyles(Configuration configuration) {
+            mConfiguration = new Configuration(configuration);//配置会被原地修改，保存副本
+        }
+    }
+
+    /**
+     * Identifies inflated attributes by their raw values, which is much cheaper than resolving them. References to
+     * theme attributes resolve the same way within one theme, and {@link ThemeStyles} covers resource qualifiers.
+     * The lookup key is refilled in place; only the keys stored in the cache are copies.
+     */
+    private static final class Key {
+        private int mDefStyleAttr;
+        private int mStyle;
+        private int mCount;
+        private int[] mAttributeNames;
+        private String[] mAttributeValues;
+        private int mHashCode;
+
+        Key() {
+            this(0, 0, new int[0], new String[0]);
+        }
+
+        private Key(int defStyleAttr, int style, int[] attributeNames, String[] attributeValues) {
+            mDefStyleAttr = defStyleAttr;
+            mStyle = style;
+            mCount = attributeNames.length;
+            mAttributeNames = attributeNames;
+            mAttributeValues = attributeValues;
+        }
+
+        Key set(AttributeSet attrs, int defStyleAttr) {
+            mDefStyleAttr = defStyleAttr;
+            mStyle = attrs != null ? attrs.getStyleAttribute() : 0;
+            int attributeCount = attrs != null ? attrs.getAttributeCount() : 0;
+            if (mAttributeNames.length < attributeCount) {
+                mAttributeNames = new int[attributeCount];
+                mAttributeValues = new String[attributeCount];
+            }
+            mCount = 0;
+            for (int i = 0; i < attributeCount; i++) {
+                int name = attrs.getAttributeNameResource(i);
+                if (isStyleAttribute(name)) {
+                    mAttributeNames[mCount] = name;
+                    mAttributeValues[mCount] = attrs.getAttributeValue(i);
+                    mCount++;
+                }
+            }
+            int result = mDefStyleAttr;
+            result = 31 * result + mStyle;
+            for (int i = 0; i < mCount; i++) {
+                result = 31 * result + mAttributeNames[i];
+                result = 31 * result + (mAttributeValues[i] != null ? mAttributeValues[i].hashCode() : 0);
+            }
+            mHashCode = result;
+            return this;
+        }
+
+        Key copy() {
+            Key key = new Key(mDefStyleAttr, mStyle, Arrays.copyOf(mAttributeNames, mCount),
+                    Arrays.copyOf(mAttributeValues, mCount));
+            key.mHashCode = mHashCode;
+            return key;
+        }
+
+        private static boolean isStyleAttribute(int name) {
+            if (name == 0) {
+                return false;
+            }
+            for (int attr : R.styleable.RotateCircleImageView) {
+                if (attr == name) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            if (mHashCode != key.mHashCode || mDefStyleAttr != key.mDefStyleAttr || mStyle != key.mStyle
+                    || mCount != key.mCount) {
+                return false;
+            }
+            for (int i = 0; i < mCount; i++) {
+                if (mAttributeNames[i] != key.mAttributeNames[i]
+                        || !TextUtils.equals(mAttributeValues[i], key.mAttributeValues[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+/**
+ * A process-wide pool of mutable bitmaps that views rasterize or downsample avatars into, bucketed by exact size and
+ * config, so that fast rebinding lists reuse pixels instead of allocating new ones. The budget is in bytes and the
+ * least recently returned bitmaps are dropped first.
+ *
+ * @author vincanyang
+ */
+final class BitmapPool {
+
+    static final int DEFAULT_MAX_SIZE = 4 * 1024 * 1024;
+
+    private static final HashMap<Key, ArrayDeque<Bitmap>> sBuckets = new HashMap<Key, ArrayDeque<Bitmap>>();
+    private static final LinkedList<Bitmap> sLruOrder = new LinkedList<Bitmap>();
+    private static int sMaxSize = DEFAULT_MAX_SIZE;
+    private static int sSize;
+    private static int sHitCount;
+    private static int sMissCount;
+
+    private BitmapPool() {
+    }
+
+    static synchronized void setMaxSize(int maxSize) {
+        sMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    static synchronized int size() {
+        return sSize;
+    }
+
+    static synchronized int hitCount() {
+        return sHitCount;
+    }
+
+    static synchronized int missCount() {
+        return sMissCount;
+    }
+
+    /**
+     * @return a cleared bitmap from the pool, or a new one if none of that size and config is pooled
+     */
+    static Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = poll(width, height, config);
+        if (bitmap == null) {
+            return Bitmap.createBitmap(width, height, config);
+        }
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    private static synchronized Bitmap poll(int width, int height, Bitmap.Config config) {
+        ArrayDeque<Bitmap> bucket = sBuckets.get(new Key(width, height, config));
+        Bitmap bitmap = bucket != null ? bucket.pollLast() : null;
+        if (bitmap == null) {
+            sMissCount++;
+            return null;
+        }
+        sHitCount++;
+        sLruOrder.remove(bitmap);
+        sSize -= bitmap.getByteCount();
+        return bitmap;
+    }
+
+    /**
+     * Hands a bitmap that nothing draws any more over to the pool: the caller must already have swapped it out of every
+     * drawable, shader and layer that referenced it, since the next {@link #get} erases it. Bitmaps that cannot be
+     * reused, and those evicted over budget, are left to the GC.
+     */
+    static synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || bitmap.getConfig() == null
+                || bitmap.getByteCount() > sMaxSize || sLruOrder.contains(bitmap)) {
+            return;
+        }
+        Key key = new Key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayDeque<Bitmap> bucket = sBuckets.get(key);
+        if (bucket == null) {
+            bucket = new ArrayDeque<Bitmap>();
+            sBuckets.put(key, bucket);
+        }
+        bucket.addLast(bitmap);
+        sLruOrder.addLast(bitmap);
+        sSize += bitmap.getByteCount();
+        trimToSize(sMaxSize);
+    }
+
+    private static void trimToSize(int maxSize) {
+        while (sSize > maxSize && !sLruOrder.isEmpty()) {
+            Bitmap eldest = sLruOrder.removeFirst();
+            Key key = new Key(eldest.getWidth(), eldest.getHeight(), eldest.getConfig());
+            ArrayDeque<Bitmap> bucket = sBuckets.get(key);
+            if (bucket != null) {
+                bucket.remove(eldest);
+                if (bucket.isEmpty()) {
+                    sBuckets.remove(key);
+                }
+            }
+            sSize -= eldest.getByteCount();//不调用recycle()，已录制的显示列表可能还引用它，交给GC回收
+        }
+    }
+
+    private static final class Key {
+        private final int mWidth;
+        private final int mHeight;
+        private final Bitmap.Config mConfig;
+
+        Key(int width, int height, Bitmap.Config config) {
+            mWidth = width;
+            mHeight = height;
+            mConfig = config;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return mWidth == key.mWidth && mHeight == key.mHeight && mConfig == key.mConfig;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mWidth;
+            result = 31 * result + mHeight;
+            result = 31 * result + (mConfig != null ? mConfig.hashCode() : 0);
+            return result;
+        }
+    }
+}
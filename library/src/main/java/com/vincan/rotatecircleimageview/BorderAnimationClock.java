@@ -0,0 +1,198 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.provider.Settings;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A process-wide frame clock shared by every rotating border, so that N animated views cost one frame callback
+ * instead of N sets of animators. Must only be used from the main thread.
+ *
+ * @author vincanyang
+ */
+final class BorderAnimationClock {
+
+    private static final long FALLBACK_FRAME_DELAY = 16;
+
+    private static final int[] ADAPTIVE_FRAME_RATES = {60, 30, 15};
+    private static final long OVERRUN_FRAME_DURATION = 25;//超过1.5个vsync即视为掉帧
+    private static final int ADAPTIVE_WINDOW_FRAMES = 30;
+    private static final int ADAPTIVE_DOWNGRADE_OVERRUNS = 5;
+    private static final int ADAPTIVE_UPGRADE_WINDOWS = 4;
+
+    interface Callback {
+        /**
+         * Called once per frame for every registered callback.
+         *
+         * @param frameTimeMillis the frame time, in the {@link SystemClock#uptimeMillis()} time base
+         */
+        void onAnimationFrame(long frameTimeMillis);
+    }
+
+    private static BorderAnimationClock sInstance;
+
+    private final ArrayList<Callback> mCallbacks = new ArrayList<Callback>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mFallbackFrameRunnable = new Runnable() {
+        @Override
+        public void run() {
+            doFrame(SystemClock.uptimeMillis());
+        }
+    };
+    private Choreographer.FrameCallback mFrameCallback;
+    private boolean mFrameScheduled;
+
+    private long mLastFrameTime = -1;
+    private int mWindowFrames;
+    private int mWindowOverruns;
+    private int mSmoothWindows;
+    private int mAdaptiveLevel;
+
+    static BorderAnimationClock getInstance() {
+        if (sInstance == null) {
+            sInstance = new BorderAnimationClock();
+        }
+        return sInstance;
+    }
+
+    private BorderAnimationClock() {
+    }
+
+    void addCallback(Callback callback) {
+        if (mCallbacks.contains(callback)) {
+            return;
+        }
+        mCallbacks.add(callback);
+        scheduleFrame();
+    }
+
+    void removeCallback(Callback callback) {
+        mCallbacks.remove(callback);
+        if (mCallbacks.isEmpty()) {
+            mLastFrameTime = -1;//空闲期间的间隔不算掉帧
+        }
+    }
+
+    /**
+     * @return how many animations are currently driven by the clock
+     */
+    int getCallbackCount() {
+        return mCallbacks.size();
+    }
+
+    /**
+     * @return the frame rate borders should stay under, lowered while frames overrun and raised again once they
+     * have been smooth for a while
+     */
+    int getAdaptiveFrameRate() {
+        return ADAPTIVE_FRAME_RATES[mAdaptiveLevel];
+    }
+
+    /**
+     * @return whether rotating borders should animate at all: not when the animator duration scale is 0, nor under
+     * battery saver if {@code respectPowerSaveMode}
+     */
+    static boolean areAnimationsAllowed(Context context, boolean respectPowerSaveMode) {
+        if (getAnimatorDurationScale(context) == 0f) {
+            return false;
+        }
+        if (respectPowerSaveMode && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+            if (powerManager != null && powerManager.isPowerSaveMode()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static float getAnimatorDurationScale(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            return Settings.Global.getFloat(context.getContentResolver(), Settings.Global.ANIMATOR_DURATION_SCALE, 1f);
+        }
+        return Settings.System.getFloat(context.getContentResolver(), Settings.System.ANIMATOR_DURATION_SCALE, 1f);
+    }
+
+    private void trackFrameDuration(long frameTimeMillis) {
+        if (mLastFrameTime >= 0) {
+            mWindowFrames++;
+            if (frameTimeMillis - mLastFrameTime > OVERRUN_FRAME_DURATION) {
+                mWindowOverruns++;
+            }
+            if (mWindowFrames == ADAPTIVE_WINDOW_FRAMES) {
+                if (mWindowOverruns >= ADAPTIVE_DOWNGRADE_OVERRUNS) {
+                    mAdaptiveLevel = Math.min(mAdaptiveLevel + 1, ADAPTIVE_FRAME_RATES.length - 1);
+                    mSmoothWindows = 0;
+                } else if (mWindowOverruns == 0 && ++mSmoothWindows >= ADAPTIVE_UPGRADE_WINDOWS) {
+                    mAdaptiveLevel = Math.max(mAdaptiveLevel - 1, 0);
+                    mSmoothWindows = 0;
+                }
+                mWindowFrames = 0;
+                mWindowOverruns = 0;
+            }
+        }
+        mLastFrameTime = frameTimeMillis;
+    }
+
+    private void doFrame(long frameTimeMillis) {
+        mFrameScheduled = false;
+        trackFrameDuration(frameTimeMillis);
+        for (int i = mCallbacks.size() - 1; i >= 0; i--) {
+            if (i < mCallbacks.size()) {//回调中可能移除了自身或其他回调
+                mCallbacks.get(i).onAnimationFrame(frameTimeMillis);
+            }
+        }
+        if (!mCallbacks.isEmpty()) {
+            scheduleFrame();
+        }
+    }
+
+    private void scheduleFrame() {
+        if (mFrameScheduled) {
+            return;
+        }
+        mFrameScheduled = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            postFrameCallback();
+        } else {
+            mHandler.postDelayed(mFallbackFrameRunnable, FALLBACK_FRAME_DELAY);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postFrameCallback() {
+        if (mFrameCallback == null) {
+            mFrameCallback = new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    BorderAnimationClock.this.doFrame(TimeUnit.NANOSECONDS.toMillis(frameTimeNanos));
+                }
+            };
+        }
+        Choreographer.getInstance().postFrameCallback(mFrameCallback);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import com.vincan.rotatecircleimageview.core.DottedRing;
+
+/**
+ * The dots of the ROTATE border's dotted track, laid out once per geometry and drawn with a single drawPoints.
+ * <p>
+ * Matches what a round-capped arc with a {@code DashPathEffect(new float[]{1f, 15f}, 0f)} used to draw: one dot every
+ * {@link DottedRing#DOT_SPACING} pixels of arc length, clockwise from 12 o'clock.
+ *
+ * @author vincanyang
+ */
+final class DottedTrack {
+
+    private final DottedRing mRing = new DottedRing();
+
+    /**
+     * Recomputes the dot centers around the given ring, reusing the array when the dot count is unchanged.
+     */
+    void update(RectF borderRect) {
+        mRing.update(borderRect.centerX(), borderRect.centerY(), Math.min(borderRect.width(), borderRect.height()) / 2f);
+    }
+
+    /**
+     * @return how many dots an arc of {@code sweepAngle} degrees from 12 o'clock covers
+     */
+    int getDotCount(float sweepAngle) {
+        return mRing.getDotCount(sweepAngle);
+    }
+
+    /**
+     * @param paint a round-capped stroke paint, its stroke width is the dot diameter
+     */
+    void draw(Canvas canvas, float sweepAngle, Paint paint) {
+        int dotCount = mRing.getDotCount(sweepAngle);
+        if (dotCount > 0) {
+            canvas.drawPoints(mRing.getPoints(), 0, dotCount * 2, paint);
+        }
+    }
+}
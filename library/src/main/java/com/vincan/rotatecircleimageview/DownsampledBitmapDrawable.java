@@ -0,0 +1,48 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+
+/**
+ * A BitmapDrawable holding a downsampled bitmap that keeps reporting the intrinsic size of the original image, so
+ * that swapping it in does not change how the view measures.
+ *
+ * @author vincanyang
+ */
+final class DownsampledBitmapDrawable extends BitmapDrawable {
+
+    private final int mIntrinsicWidth;
+    private final int mIntrinsicHeight;
+
+    DownsampledBitmapDrawable(Resources res, Bitmap bitmap, int intrinsicWidth, int intrinsicHeight) {
+        super(res, bitmap);
+        mIntrinsicWidth = intrinsicWidth;
+        mIntrinsicHeight = intrinsicHeight;
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return mIntrinsicWidth;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return mIntrinsicHeight;
+    }
+}
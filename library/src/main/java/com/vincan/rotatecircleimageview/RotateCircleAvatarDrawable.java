@@ -0,0 +1,867 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.LinearGradient;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Shader;
+import android.graphics.drawable.Animatable;
+import android.graphics.drawable.Drawable;
+
+import com.vincan.rotatecircleimageview.RotateCircleImageView.BorderStyle;
+import com.vincan.rotatecircleimageview.core.AvatarGeometry;
+import com.vincan.rotatecircleimageview.core.RotateBorderCurves;
+
+import java.util.Arrays;
+
+/**
+ * The circle-cropped avatar and its border, as a Drawable that needs no View of its own, e.g. in a span, a compound
+ * drawable or a custom view drawing many avatars. {@link RotateCircleImageView} delegates all of its drawing to one.
+ * <p>
+ * The avatar is center-cropped into the largest circle that fits the bounds. A ROTATE border only moves between
+ * {@link #start()} and {@link #stop()}, and while it does, every frame invalidates only the ring through
+ * {@link #getDirtyBounds()}.
+ * <p>
+ * A drawable is not thread-safe and must stay on one thread. {@link #start()}, {@link #stop()}, a ROTATE border and
+ * anything that invalidates an attached {@link Drawable.Callback} must only be used from the main thread: the
+ * animation is driven by the main thread's {@link android.view.Choreographer} through {@link BorderAnimationClock},
+ * and {@link RotationAtlas} atlases are obtained when the animation starts. A STILL drawable without a callback that
+ * is never started may be set up and drawn on any one thread, which is how {@link AvatarRenderer} uses one drawable
+ * per thread. That path never obtains a {@link RotationAtlas}; the only shared state it touches is the synchronized
+ * {@link StillBorderCache}, which renders a missing ring while holding its process-wide lock, so a main thread draw
+ * that needs the cache at the same time waits for that ring.
+ *
+ * @author vincanyang
+ */
+public class RotateCircleAvatarDrawable extends Drawable implements Animatable {
+
+    static final int DEFAULT_BORDER_WIDTH = 0;
+    static final int DEFAULT_CIRCLE_BACKGROUND_COLOR = Color.TRANSPARENT;
+    static final boolean DEFAULT_BORDER_OVERLAY = false;
+    static final boolean DEFAULT_AVATAR_PRECOMPOSED = false;
+    static final int DEFAULT_PLACEHOLDER_COLOR = Color.TRANSPARENT;
+    static final int DEFAULT_BORDER_FRAME_RATE = 0;
+    static final boolean DEFAULT_BORDER_ROTATION_ATLAS = false;
+    private static final float FRAME_RATE_SLOP = 4f;
+
+    static final int DEFAULT_BORDER_TRACK_START_COLOR = Color.parseColor("#4799FE");
+    static final int DEFAULT_BORDER_TRACK_END_COLOR = Color.parseColor("#19D7FD");
+    static final int DEFAULT_BORDER_ROTATE_DURATION = 1200;
+    static final int DEFAULT_BORDER_TRACK_DURATION = 2000;
+    static final int DEFAULT_CIRCLE_COLOR = DEFAULT_BORDER_TRACK_START_COLOR;
+    static final int DEFAULT_BORDER_PADDING = 0;
+    private static final int DEFAULT_BORDER_COLORS_LENGTH = 50;
+
+    static int sDefaultBorderFrameRate = DEFAULT_BORDER_FRAME_RATE;
+    static boolean sBorderFrameRateAdaptive;
+
+    private final AvatarGeometry mGeometry = new AvatarGeometry();
+    private final RectF mDrawableRect = new RectF();
+    private final RectF mBorderRect = new RectF();
+    private final RectF mLayerBounds = new RectF();
+
+    private final Matrix mShaderMatrix = new Matrix();
+    private final Paint mBitmapPaint = new Paint();
+    private final Paint mCircleBackgroundPaint = new Paint();
+    private final Paint mPlaceholderPaint = new Paint();
+
+    private int mBorderWidth = DEFAULT_BORDER_WIDTH;
+    private int mCircleBackgroundColor = DEFAULT_CIRCLE_BACKGROUND_COLOR;
+    private int mPlaceholderColor = DEFAULT_PLACEHOLDER_COLOR;
+    private int mBorderPadding = DEFAULT_BORDER_PADDING;
+    private boolean mBorderOverlay = DEFAULT_BORDER_OVERLAY;
+    private int mAlpha = 255;
+
+    private Bitmap mBitmap;
+    private BitmapShader mBitmapShader;
+    private Bitmap mBitmapShaderSource;
+    private int mBitmapWidth;
+    private int mBitmapHeight;
+    private boolean mBitmapOpaque;
+
+    private float mDrawableRadius;
+
+    private ColorFilter mColorFilter;
+
+    private static final int DIRTY_BITMAP = 1;
+    private static final int DIRTY_GEOMETRY = 1 << 1;
+    private static final int DIRTY_BORDER = 1 << 2;
+    private static final int DIRTY_ALL = DIRTY_BITMAP | DIRTY_GEOMETRY | DIRTY_BORDER;
+
+    private int mDirtyFlags = DIRTY_ALL;
+    private boolean mSettingUp;
+
+    private BorderStyle mBorderStyle = BorderStyle.STILL;
+
+    private float mRotateAngle;
+    private int mBorderRotateDuration = DEFAULT_BORDER_ROTATE_DURATION;
+
+    private int mBorderTrackDuration = DEFAULT_BORDER_TRACK_DURATION;
+    private int mBorderTrackStartColor = DEFAULT_BORDER_TRACK_START_COLOR;
+    private int mBorderTrackEndColor = DEFAULT_BORDER_TRACK_END_COLOR;
+
+    private float mSolidTrackAngle;//0=>216, 216<=>36
+    private final Paint mSolidTrackPaint = new Paint();
+    private Shader mTrackShader;
+    private AvatarStyle mStyle;
+    private final Rect mTrackShaderBounds = new Rect();
+    private int mTrackShaderStartColor;
+    private int mTrackShaderEndColor;
+
+    private float mDottedTrackAngle;//0=>360, 360<=>108
+    private final DottedTrack mDottedTrack = new DottedTrack();
+
+    private float mTrackPhase;
+    private boolean mBorderRotationAtlas = DEFAULT_BORDER_ROTATION_ATLAS;
+    private RotationAtlas mRotationAtlas;
+    private boolean mRotationAtlasUnavailable;//放不下时不再逐帧重试，直到atlas被释放
+    private final Paint mRotationAtlasPaint = new Paint();
+
+    private boolean mBorderAnimating;
+    private boolean mInvalidatingBorder;
+    private final Rect mBorderDirtyRect = new Rect();
+    private Bitmap mAvatarLayer;//旋转时头像不变，缓存成位图，每帧只重绘边框；取自位图池，停止时归还
+    private boolean mAvatarPrecomposed = DEFAULT_AVATAR_PRECOMPOSED;
+    private int mAvatarLayerLeft;
+    private int mAvatarLayerTop;
+    private int mAvatarRasterCount;
+    private int mAvatarLayerDrawCount;
+    private long mBorderAnimationStartTime = -1;//暂停时保留，恢复后动画相位不变
+    private long mLastBorderFrameTime = -1;
+    private int mBorderFrameRate = DEFAULT_BORDER_FRAME_RATE;
+    private boolean mBorderAnimationAllowed = true;
+    private final BorderAnimationClock.Callback mBorderAnimationCallback = new BorderAnimationClock.Callback() {
+        @Override
+        public void onAnimationFrame(long frameTimeMillis) {
+            if (advanceBorderAnimation(frameTimeMillis)) {
+                invalidateBorder();
+            }
+        }
+    };
+
+    private int[] mBorderColors = new int[]{DEFAULT_CIRCLE_COLOR};
+    private Bitmap mStillBorderBitmap;
+    private final SegmentedRing mStillBorderRing = new SegmentedRing();
+
+    public RotateCircleAvatarDrawable() {
+        mBitmapPaint.setAntiAlias(true);
+
+        mCircleBackgroundPaint.setStyle(Paint.Style.FILL);
+        mCircleBackgroundPaint.setAntiAlias(true);
+        mCircleBackgroundPaint.setColor(mCircleBackgroundColor);
+
+        mPlaceholderPaint.setStyle(Paint.Style.FILL);
+        mPlaceholderPaint.setAntiAlias(true);
+        mPlaceholderPaint.setColor(mPlaceholderColor);
+
+        mSolidTrackPaint.setStyle(Paint.Style.STROKE);
+        mSolidTrackPaint.setAntiAlias(true);
+        mSolidTrackPaint.setStrokeCap(Paint.Cap.ROUND);
+
+        mRotationAtlasPaint.setAntiAlias(true);
+        mRotationAtlasPaint.setFilterBitmap(true);
+    }
+
+    public RotateCircleAvatarDrawable(Bitmap bitmap) {
+        this();
+        mBitmap = bitmap;
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        setup();
+        int saveCount = -1;
+        if (mAlpha < 255) {
+            mLayerBounds.set(getBounds());
+            saveCount = canvas.saveLayerAlpha(mLayerBounds, mAlpha, Canvas.ALL_SAVE_FLAG);
+        }
+        if (mBitmap != null) {
+            if (mCircleBackgroundColor != Color.TRANSPARENT && !coversCircleBackground()) {
+                canvas.drawCircle(mDrawableRect.centerX(), mDrawableRect.centerY(), mDrawableRadius, mCircleBackgroundPaint);
+            }
+            drawAvatar(canvas);
+        } else if (mPlaceholderColor != Color.TRANSPARENT) {
+            canvas.drawCircle(mDrawableRect.centerX(), mDrawableRect.centerY(), mDrawableRadius, mPlaceholderPaint);
+        }
+        if (mBorderWidth > 0) {
+            switch (mBorderStyle) {
+                case ROTATE:
+                    if (mBorderAnimationAllowed) {
+                        drawRotateBorder(canvas);
+                    } else {
+                        drawStillBorder(canvas);//系统关闭了动画或处于省电模式
+                    }
+                    break;
+                case STILL:
+                    drawStillBorder(canvas);
+                    break;
+            }
+        }
+        if (saveCount >= 0) {
+            canvas.restoreToCount(saveCount);
+        }
+    }
+
+    /**
+     * An opaque, center-cropped avatar hides the circle background entirely, unless a color filter changes its alpha.
+     */
+    private boolean coversCircleBackground() {
+        return mBitmapOpaque && mColorFilter == null;
+    }
+
+    private void drawAvatar(Canvas canvas) {
+        if (useAvatarLayer()) {
+            if (mAvatarLayer == null) {
+                mAvatarLayer = createAvatarLayer();
+            }
+            if (mAvatarLayer != null) {
+                canvas.drawBitmap(mAvatarLayer, mAvatarLayerLeft, mAvatarLayerTop, null);
+                mAvatarLayerDrawCount++;
+                return;
+            }
+        }
+        canvas.drawCircle(mDrawableRect.centerX(), mDrawableRect.centerY(), mDrawableRadius, mBitmapPaint);
+        mAvatarRasterCount++;
+    }
+
+    private Bitmap createAvatarLayer() {
+        mAvatarLayerLeft = (int) Math.floor(mDrawableRect.centerX() - mDrawableRadius);
+        mAvatarLayerTop = (int) Math.floor(mDrawableRect.centerY() - mDrawableRadius);
+        int right = (int) Math.ceil(mDrawableRect.centerX() + mDrawableRadius);
+        int bottom = (int) Math.ceil(mDrawableRect.centerY() + mDrawableRadius);
+        if (right <= mAvatarLayerLeft || bottom <= mAvatarLayerTop) {
+            return null;
+        }
+        Bitmap layer;
+        try {
+            layer = BitmapPool.get(right - mAvatarLayerLeft, bottom - mAvatarLayerTop, Bitmap.Config.ARGB_8888);
+        } catch (OutOfMemoryError e) {
+            return null;
+        }
+        Canvas canvas = new Canvas(layer);
+        canvas.translate(-mAvatarLayerLeft, -mAvatarLayerTop);
+        canvas.drawCircle(mDrawableRect.centerX(), mDrawableRect.centerY(), mDrawableRadius, mBitmapPaint);
+        mAvatarRasterCount++;
+        return layer;
+    }
+
+    private boolean useAvatarLayer() {
+        return mAvatarPrecomposed || (mBorderAnimating && mBorderWidth > 0);
+    }
+
+    /**
+     * Returns the avatar layer to the pool. Only this drawable draws it, and the next draw rebuilds it if needed.
+     */
+    void releaseAvatarLayer() {
+        if (mAvatarLayer != null) {
+            BitmapPool.put(mAvatarLayer);
+            mAvatarLayer = null;
+        }
+    }
+
+    /**
+     * 只刷新边框所在区域
+     */
+    private void invalidateBorder() {
+        float outset = StillBorderCache.getOutset(mBorderWidth);//加上抗锯齿像素
+        mBorderDirtyRect.set((int) Math.floor(mBorderRect.left - outset), (int) Math.floor(mBorderRect.top - outset),
+                (int) Math.ceil(mBorderRect.right + outset), (int) Math.ceil(mBorderRect.bottom + outset));
+        mInvalidatingBorder = true;
+        try {
+            invalidateSelf();
+        } finally {
+            mInvalidatingBorder = false;
+        }
+    }
+
+    /**
+     * @return the ring while a border animation frame is being invalidated, the bounds otherwise
+     */
+    @Override
+    public Rect getDirtyBounds() {
+        return mInvalidatingBorder ? mBorderDirtyRect : getBounds();
+    }
+
+    private void drawRotateBorder(Canvas canvas) {
+        int saveCount = canvas.save();
+        canvas.rotate(mRotateAngle, mBorderRect.centerX(), mBorderRect.centerY());//实线圆弧末端转动是通过旋转整个view来实现的
+        if (mBorderRotationAtlas && mBorderAnimating && mTrackPhase >= 1f) {//开场展开只播放一次，实时绘制
+            Bitmap frame = mRotationAtlas != null ? mRotationAtlas.getFrame(mTrackPhase) : null;
+            if (frame != null) {
+                canvas.drawBitmap(frame, StillBorderCache.getOffset(mBorderRect.left, mBorderWidth),
+                        StillBorderCache.getOffset(mBorderRect.top, mBorderWidth), mRotationAtlasPaint);//ALPHA_8遮罩由渐变shader着色
+                canvas.restoreToCount(saveCount);
+                return;
+            }
+        }
+        canvas.drawArc(mBorderRect, 270f, mSolidTrackAngle, false, mSolidTrackPaint);
+        mDottedTrack.draw(canvas, mDottedTrackAngle, mSolidTrackPaint);//圆头画笔画点，代替逐帧生成虚线路径
+        canvas.restoreToCount(saveCount);
+    }
+
+    /**
+     * Obtains the atlas of a started ROTATE border once its ring is set up, so that its frames are rendered when the
+     * animation starts or the ring changes rather than while drawing.
+     */
+    private void obtainRotationAtlas() {
+        if (mRotationAtlas != null || mRotationAtlasUnavailable || !mBorderRotationAtlas || !mBorderAnimating
+                || (mDirtyFlags & (DIRTY_GEOMETRY | DIRTY_BORDER)) != 0 || mBorderRect.isEmpty()) {
+            return;//圆环尚未setup时，由setup()获取
+        }
+        int frameRate = mBorderFrameRate > 0 ? mBorderFrameRate : sDefaultBorderFrameRate;
+        mRotationAtlas = RotationAtlas.obtain(mBorderRect, mBorderWidth,
+                frameRate > 0 ? frameRate : RotationAtlas.DEFAULT_FRAME_RATE, mBorderTrackDuration);
+        mRotationAtlasUnavailable = mRotationAtlas == null;
+    }
+
+    private void releaseRotationAtlas() {
+        if (mRotationAtlas != null) {
+            RotationAtlas.release(mRotationAtlas);
+            mRotationAtlas = null;
+        }
+        mRotationAtlasUnavailable = false;
+    }
+
+    private void drawStillBorder(Canvas canvas) {
+        if (mStillBorderBitmap == null) {
+            mStillBorderBitmap = StillBorderCache.get(mBorderRect, mBorderWidth, mBorderColors, mStillBorderRing);
+        }
+        if (mStillBorderBitmap != null) {
+            canvas.drawBitmap(mStillBorderBitmap, StillBorderCache.getOffset(mBorderRect.left, mBorderWidth),
+                    StillBorderCache.getOffset(mBorderRect.top, mBorderWidth), null);
+        } else {
+            mStillBorderRing.draw(canvas);
+        }
+    }
+
+    @Override
+    protected void onBoundsChange(Rect bounds) {
+        super.onBoundsChange(bounds);
+        invalidateSetup(DIRTY_GEOMETRY);
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        if (alpha == mAlpha) {
+            return;
+        }
+        mAlpha = alpha;
+        invalidateSelf();
+    }
+
+    @Override
+    public int getAlpha() {
+        return mAlpha;
+    }
+
+    /**
+     * Applies to the avatar only, not to its border.
+     */
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        if (colorFilter == mColorFilter) {
+            return;
+        }
+        mColorFilter = colorFilter;
+        mBitmapPaint.setColorFilter(colorFilter);
+        releaseAvatarLayer();
+        invalidateSelf();
+    }
+
+    @Override
+    public ColorFilter getColorFilter() {
+        return mColorFilter;
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+
+    public Bitmap getBitmap() {
+        return mBitmap;
+    }
+
+    /**
+     * Applies every attribute of a shared style, including its border style, and shares its track gradient while the
+     * track colors are not changed. Later setter calls override single attributes.
+     */
+    public void setStyle(AvatarStyle style) {
+        boolean changed = style != mStyle;
+        mStyle = style;
+        setBorderWidth(style.mBorderWidth);
+        setBorderColors(style.mBorderColors);
+        setBorderOverlay(style.mBorderOverlay);
+        setAvatarPrecomposed(style.mAvatarPrecomposed);
+        setCircleBackgroundColor(style.mCircleBackgroundColor);
+        setBorderPadding(style.mBorderPadding);
+        setBorderTrackStartColor(style.mBorderTrackStartColor);
+        setBorderTrackEndColor(style.mBorderTrackEndColor);
+        setBorderTrackDuration(style.mBorderTrackDuration);
+        setBorderRotateDuration(style.mBorderRotateDuration);
+        setBorderFrameRate(style.mBorderFrameRate);
+        setBorderRotationAtlas(style.mBorderRotationAtlas);
+        setBorderStyle(style.mBorderStyle);
+        if (changed) {
+            invalidateSetup(DIRTY_BORDER);//改用样式共享的渐变
+        }
+    }
+
+    public AvatarStyle getStyle() {
+        return mStyle;
+    }
+
+    /**
+     * Sets the avatar, drawn through a BitmapShader so the bitmap is never copied. Pass null to show the
+     * placeholder instead.
+     */
+    public void setBitmap(Bitmap bitmap) {
+        if (bitmap == mBitmap) {
+            return;
+        }
+        mBitmap = bitmap;
+        invalidateSetup(DIRTY_BITMAP);
+    }
+
+    public int getCircleBackgroundColor() {
+        return mCircleBackgroundColor;
+    }
+
+    public void setCircleBackgroundColor(int circleBackgroundColor) {
+        if (circleBackgroundColor == mCircleBackgroundColor) {
+            return;
+        }
+        mCircleBackgroundColor = circleBackgroundColor;
+        mCircleBackgroundPaint.setColor(circleBackgroundColor);
+        invalidateSelf();
+    }
+
+    public int getPlaceholderColor() {
+        return mPlaceholderColor;
+    }
+
+    /**
+     * Sets the color of the circle drawn while there is no bitmap. Transparent, the default, draws nothing.
+     */
+    public void setPlaceholderColor(int placeholderColor) {
+        if (placeholderColor == mPlaceholderColor) {
+            return;
+        }
+        mPlaceholderColor = placeholderColor;
+        mPlaceholderPaint.setColor(placeholderColor);
+        if (mBitmap == null) {
+            invalidateSelf();
+        }
+    }
+
+    public int getBorderWidth() {
+        return mBorderWidth;
+    }
+
+    public void setBorderWidth(int borderWidth) {
+        if (borderWidth == mBorderWidth) {
+            return;
+        }
+        mBorderWidth = borderWidth;
+        invalidateSetup(DIRTY_GEOMETRY | DIRTY_BORDER);
+    }
+
+    public boolean isBorderOverlay() {
+        return mBorderOverlay;
+    }
+
+    public void setBorderOverlay(boolean borderOverlay) {
+        if (borderOverlay == mBorderOverlay) {
+            return;
+        }
+        mBorderOverlay = borderOverlay;
+        invalidateSetup(DIRTY_GEOMETRY);
+    }
+
+    public int getBorderPadding() {
+        return mBorderPadding;
+    }
+
+    public void setBorderPadding(int borderPadding) {
+        if (borderPadding == mBorderPadding) {
+            return;
+        }
+        mBorderPadding = borderPadding;
+        invalidateSetup(DIRTY_GEOMETRY);
+    }
+
+    public boolean isAvatarPrecomposed() {
+        return mAvatarPrecomposed;
+    }
+
+    /**
+     * @see RotateCircleImageView#setAvatarPrecomposed(boolean)
+     */
+    public void setAvatarPrecomposed(boolean avatarPrecomposed) {
+        if (avatarPrecomposed == mAvatarPrecomposed) {
+            return;
+        }
+        mAvatarPrecomposed = avatarPrecomposed;
+        invalidateSetup(DIRTY_BITMAP);
+    }
+
+    /**
+     * @return the bytes currently held by the precomposed avatar bitmap, 0 if there is none
+     */
+    public int getAvatarLayerByteCount() {
+        return mAvatarLayer != null ? mAvatarLayer.getByteCount() : 0;
+    }
+
+    /**
+     * @return how many times the avatar circle has been rasterized through its BitmapShader
+     */
+    public int getAvatarRasterCount() {
+        return mAvatarRasterCount;
+    }
+
+    /**
+     * @return how many frames reused the cached avatar layer instead of rasterizing the avatar again
+     */
+    public int getAvatarLayerDrawCount() {
+        return mAvatarLayerDrawCount;
+    }
+
+    public int[] getBorderColors() {
+        return mBorderColors.clone();
+    }
+
+    /**
+     * Sets the STILL border colors starting at 12 o'clock and going clockwise, at most 50 are used.
+     */
+    public void setBorderColors(int[] borderColors) {
+        if (borderColors != null && !Arrays.equals(mBorderColors, borderColors)) {
+            mBorderColors = Arrays.copyOf(borderColors, Math.min(borderColors.length, DEFAULT_BORDER_COLORS_LENGTH));
+            invalidateSetup(DIRTY_BORDER);
+        }
+    }
+
+    public BorderStyle getBorderStyle() {
+        return mBorderStyle;
+    }
+
+    /**
+     * Switching style restarts the ROTATE animation from its first frame. A ROTATE border stands still until
+     * {@link #start()} is called.
+     */
+    public void setBorderStyle(BorderStyle borderStyle) {
+        if (mBorderStyle == borderStyle) {
+            return;
+        }
+        mBorderStyle = borderStyle;
+        mBorderAnimationStartTime = -1;
+        mRotateAngle = 0f;
+        mTrackPhase = 0f;
+        mSolidTrackAngle = 0f;
+        mDottedTrackAngle = 0f;
+        if (borderStyle != BorderStyle.ROTATE) {
+            stop();
+        }
+        invalidateSelf();
+    }
+
+    public void setBorderTrackStartColor(int borderTrackStartColor) {
+        if (borderTrackStartColor != mBorderTrackStartColor) {
+            mBorderTrackStartColor = borderTrackStartColor;
+            invalidateSetup(DIRTY_BORDER);
+        }
+    }
+
+    public void setBorderTrackEndColor(int borderTrackEndColor) {
+        if (borderTrackEndColor != mBorderTrackEndColor) {
+            mBorderTrackEndColor = borderTrackEndColor;
+            invalidateSetup(DIRTY_BORDER);
+        }
+    }
+
+    public void setBorderTrackDuration(int borderTrackDuration) {
+        if (borderTrackDuration != mBorderTrackDuration) {
+            mBorderTrackDuration = borderTrackDuration;
+            releaseRotationAtlas();
+            obtainRotationAtlas();
+        }
+    }
+
+    public void setBorderRotateDuration(int borderRotateDuration) {
+        mBorderRotateDuration = borderRotateDuration;
+    }
+
+    public int getBorderFrameRate() {
+        return mBorderFrameRate;
+    }
+
+    /**
+     * @see RotateCircleImageView#setBorderFrameRate(int)
+     */
+    public void setBorderFrameRate(int frameRate) {
+        if (frameRate != mBorderFrameRate) {
+            mBorderFrameRate = frameRate;
+            releaseRotationAtlas();//帧数随帧率而定
+            obtainRotationAtlas();
+        }
+    }
+
+    public boolean isBorderRotationAtlas() {
+        return mBorderRotationAtlas;
+    }
+
+    /**
+     * @see RotateCircleImageView#setBorderRotationAtlas(boolean)
+     */
+    public void setBorderRotationAtlas(boolean rotationAtlas) {
+        if (rotationAtlas == mBorderRotationAtlas) {
+            return;
+        }
+        mBorderRotationAtlas = rotationAtlas;
+        releaseRotationAtlas();
+        obtainRotationAtlas();
+        invalidateSelf();
+    }
+
+    /**
+     * When false, a ROTATE border is drawn like a STILL one and {@link #start()} does nothing, e.g. because the
+     * system disabled animations.
+     */
+    void setBorderAnimationAllowed(boolean allowed) {
+        if (allowed == mBorderAnimationAllowed) {
+            return;
+        }
+        mBorderAnimationAllowed = allowed;
+        if (!allowed) {
+            stop();
+        }
+        invalidateSelf();
+    }
+
+    /**
+     * Starts the ROTATE border animation, resuming at the phase it would have reached had it never stopped.
+     */
+    @Override
+    public void start() {
+        if (startBorderAnimation()) {
+            BorderAnimationClock.getInstance().addCallback(mBorderAnimationCallback);
+        }
+    }
+
+    /**
+     * Like {@link #start()}, but for owners that drive many drawables from one clock callback through
+     * {@link #advanceBorderAnimation(long)} and invalidate once per frame.
+     *
+     * @return whether the animation was stopped and has now started
+     */
+    boolean startBorderAnimation() {
+        if (mBorderAnimating || mBorderStyle != BorderStyle.ROTATE || !mBorderAnimationAllowed) {
+            return false;
+        }
+        mBorderAnimating = true;
+        mLastBorderFrameTime = -1;
+        setup();
+        obtainRotationAtlas();
+        return true;
+    }
+
+    /**
+     * Moves a started ROTATE border to the given frame, without invalidating.
+     *
+     * @return whether anything changed, false when the frame was skipped to honor the frame rate cap
+     */
+    boolean advanceBorderAnimation(long frameTimeMillis) {
+        if (!mBorderAnimating) {
+            return false;
+        }
+        if (mBorderAnimationStartTime < 0) {
+            mBorderAnimationStartTime = frameTimeMillis;
+        }
+        int frameRate = getEffectiveBorderFrameRate();
+        if (frameRate > 0 && mLastBorderFrameTime >= 0
+                && frameTimeMillis - mLastBorderFrameTime < 1000f / frameRate - FRAME_RATE_SLOP) {
+            return false;//限帧，跳过这一帧
+        }
+        mLastBorderFrameTime = frameTimeMillis;
+        long elapsed = frameTimeMillis - mBorderAnimationStartTime;
+        mRotateAngle = RotateBorderCurves.rotateAngle(elapsed, mBorderRotateDuration);
+        mTrackPhase = RotateBorderCurves.trackPhase(elapsed, mBorderTrackDuration);
+        mSolidTrackAngle = RotateBorderCurves.solidTrackAngle(mTrackPhase);
+        mDottedTrackAngle = RotateBorderCurves.dottedTrackAngle(mTrackPhase);
+        return true;
+    }
+
+    @Override
+    public void stop() {
+        if (!mBorderAnimating) {
+            return;
+        }
+        mBorderAnimating = false;
+        BorderAnimationClock.getInstance().removeCallback(mBorderAnimationCallback);
+        releaseRotationAtlas();//停止或detach后不再占用atlas的预算
+        if (!mAvatarPrecomposed) {
+            releaseAvatarLayer();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return mBorderAnimating;
+    }
+
+    private int getEffectiveBorderFrameRate() {
+        int frameRate = mBorderFrameRate > 0 ? mBorderFrameRate : sDefaultBorderFrameRate;
+        if (sBorderFrameRateAdaptive) {
+            int adaptiveFrameRate = BorderAnimationClock.getInstance().getAdaptiveFrameRate();
+            frameRate = frameRate > 0 ? Math.min(frameRate, adaptiveFrameRate) : adaptiveFrameRate;
+        }
+        return frameRate;
+    }
+
+    /**
+     * @return the circle the avatar is cropped to, up to date with the current bounds
+     */
+    RectF getAvatarRect() {
+        setup();
+        return mDrawableRect;
+    }
+
+    /**
+     * @return the radius of the avatar circle, up to date with the current bounds
+     */
+    float getAvatarRadius() {
+        setup();
+        return mDrawableRadius;
+    }
+
+    /**
+     * Marks state as stale and schedules a draw. Setters never recompute anything themselves, so a bind that changes
+     * the image, border and padding in a row costs one {@link #setup()} right before the next draw.
+     */
+    private void invalidateSetup(int dirtyFlags) {
+        mDirtyFlags |= dirtyFlags;
+        if (!mSettingUp) {
+            invalidateSelf();
+        }
+    }
+
+    /**
+     * Recomputes only the state marked dirty since the last call.
+     */
+    private void setup() {
+        if (mDirtyFlags == 0 || mSettingUp || getBounds().isEmpty()) {
+            return;
+        }
+        mSettingUp = true;
+        try {
+            int dirtyFlags = mDirtyFlags;
+            mDirtyFlags = 0;
+            if ((dirtyFlags & DIRTY_GEOMETRY) != 0) {
+                setupGeometry();
+            }
+            if ((dirtyFlags & (DIRTY_GEOMETRY | DIRTY_BORDER)) != 0) {
+                setupBorder();
+            }
+            if ((dirtyFlags & (DIRTY_GEOMETRY | DIRTY_BITMAP)) != 0) {
+                setupBitmap();
+            }
+        } finally {
+            mSettingUp = false;
+        }
+        obtainRotationAtlas();
+    }
+
+    private void setupGeometry() {
+        Rect bounds = getBounds();
+        mGeometry.update(bounds.left, bounds.top, bounds.right, bounds.bottom, mBorderWidth, mBorderPadding,
+                mBorderOverlay);
+        mBorderRect.set(mGeometry.getBorderLeft(), mGeometry.getBorderTop(), mGeometry.getBorderRight(),
+                mGeometry.getBorderBottom());
+        mDrawableRect.set(mGeometry.getDrawableLeft(), mGeometry.getDrawableTop(), mGeometry.getDrawableRight(),
+                mGeometry.getDrawableBottom());
+        mDrawableRadius = mGeometry.getDrawableRadius();
+    }
+
+    private void setupBorder() {
+        mStillBorderRing.update(mBorderRect, mBorderWidth, mBorderColors);
+
+        Rect bounds = getBounds();
+        if (mStyle != null && mStyle.mBorderTrackStartColor == mBorderTrackStartColor
+                && mStyle.mBorderTrackEndColor == mBorderTrackEndColor) {
+            mTrackShader = mStyle.getTrackShader(bounds);//同样式同尺寸的头像共用一个渐变
+            mTrackShaderBounds.set(bounds);
+            mTrackShaderStartColor = mBorderTrackStartColor;
+            mTrackShaderEndColor = mBorderTrackEndColor;
+        } else if (mTrackShader == null || !mTrackShaderBounds.equals(bounds)
+                || mTrackShaderStartColor != mBorderTrackStartColor || mTrackShaderEndColor != mBorderTrackEndColor) {
+            mTrackShader = new LinearGradient(bounds.left, bounds.top, bounds.right, bounds.bottom,
+                    mBorderTrackStartColor, mBorderTrackEndColor, Shader.TileMode.CLAMP);
+            mTrackShaderBounds.set(bounds);
+            mTrackShaderStartColor = mBorderTrackStartColor;
+            mTrackShaderEndColor = mBorderTrackEndColor;
+        }
+        mSolidTrackPaint.setShader(mTrackShader);
+        mSolidTrackPaint.setStrokeWidth(mBorderWidth);
+        mDottedTrack.update(mBorderRect);
+        mRotationAtlasPaint.setShader(mTrackShader);
+
+        mStillBorderBitmap = null;
+        releaseRotationAtlas();
+    }
+
+    private void setupBitmap() {
+        if (mBitmap != null) {
+            if (mBitmapShaderSource != mBitmap) {//位图不变时复用shader
+                mBitmapShader = new BitmapShader(mBitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+                mBitmapShaderSource = mBitmap;
+                mBitmapPaint.setShader(mBitmapShader);
+            }
+            mBitmapHeight = mBitmap.getHeight();
+            mBitmapWidth = mBitmap.getWidth();
+            mBitmapOpaque = !mBitmap.hasAlpha();
+        } else {
+            mBitmapOpaque = false;
+            mBitmapShader = null;
+            mBitmapShaderSource = null;
+            mBitmapPaint.setShader(null);
+        }
+
+        updateShaderMatrix();
+        releaseAvatarLayer();
+        if (mAvatarPrecomposed && mBitmap != null) {
+            mAvatarLayer = createAvatarLayer();
+        }
+    }
+
+    private void updateShaderMatrix() {
+        if (mBitmap == null) {
+            return;
+        }
+        mGeometry.updateShaderTransform(mBitmapWidth, mBitmapHeight);
+        mShaderMatrix.setScale(mGeometry.getShaderScale(), mGeometry.getShaderScale());
+        mShaderMatrix.postTranslate(mGeometry.getShaderTranslateX(), mGeometry.getShaderTranslateY());
+
+        mBitmapShader.setLocalMatrix(mShaderMatrix);
+    }
+}
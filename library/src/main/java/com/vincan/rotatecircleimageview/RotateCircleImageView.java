@@ -15,35 +15,31 @@
  */
 package com.vincan.rotatecircleimageview;
 
-import android.animation.Animator;
-import android.animation.ValueAnimator;
+import android.annotation.TargetApi;
 import android.content.Context;
-import android.content.res.TypedArray;
 import android.graphics.Bitmap;
-import android.graphics.BitmapShader;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.ColorFilter;
-import android.graphics.DashPathEffect;
-import android.graphics.LinearGradient;
-import android.graphics.Matrix;
 import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
 import android.graphics.RectF;
-import android.graphics.Shader;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
+import android.os.Build;
 import android.util.AttributeSet;
-import android.util.SparseArray;
 import android.view.View;
-import android.view.animation.LinearInterpolator;
+import android.view.ViewTreeObserver;
 import android.widget.ImageView;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 
 /**
- * A fast rotating circular ImageView perfect for profile images.
+ * A fast rotating circular ImageView perfect for profile images. All drawing is done by a
+ * {@link RotateCircleAvatarDrawable}, this view adds image loading and pauses the rotation while it is off screen.
  *
  * @author vincanyang
  */
@@ -51,81 +47,59 @@ public class RotateCircleImageView extends ImageView {
 
     private static final ScaleType SCALE_TYPE = ScaleType.CENTER_CROP;
 
-    private static final Bitmap.Config BITMAP_CONFIG = Bitmap.Config.ARGB_8888;
+    static final Bitmap.Config DEFAULT_BITMAP_CONFIG = null;//根据原图是否透明自动选择
     private static final int COLORDRAWABLE_DIMENSION = 2;
-
-    private static final int DEFAULT_BORDER_WIDTH = 0;
-    private static final int DEFAULT_CIRCLE_BACKGROUND_COLOR = Color.TRANSPARENT;
-    private static final boolean DEFAULT_BORDER_OVERLAY = false;
-
-    private final RectF mDrawableRect = new RectF();
-    private final RectF mBorderRect = new RectF();
-
-    private final Matrix mShaderMatrix = new Matrix();
-    private final Paint mBitmapPaint = new Paint();
-    private final Paint mBorderPaint = new Paint();
-    private final Paint mCircleBackgroundPaint = new Paint();
-
-    private int mBorderWidth = DEFAULT_BORDER_WIDTH;
-    private int mCircleBackgroundColor = DEFAULT_CIRCLE_BACKGROUND_COLOR;
-
+    private static final Paint sScalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    static final float DEFAULT_BITMAP_QUALITY_MARGIN = 1f;
+    private static final float MIPMAP_MAX_SCALE = 0.5f;//显示尺寸不到位图一半时才生成mipmap
+
+    private Bitmap mSourceBitmap;
+    private boolean mSourceBitmapShared;//原图是否还被调用方持有，否则降采样后即可释放
+    private boolean mOwnsDrawable;
+    private Bitmap mOwnedSourceBitmap;//本view光栅化或降采样出的原图，不再使用时归还位图池
+    private boolean mBitmapReleased;//detach时已归还可重建的位图
+    private float mBitmapQualityMargin = DEFAULT_BITMAP_QUALITY_MARGIN;
+    private Bitmap.Config mBitmapConfig = DEFAULT_BITMAP_CONFIG;
+    private boolean mBitmapMipMap;
+    private AvatarLoader.Source mPendingSource;
+    private AvatarLoader.Request mLoadRequest;
+    private AvatarLoader.Source mImageSource;//原图来源，降采样后头像变大时据此重新解码
+    private boolean mImageSourceAsync;
+    private AvatarCache.Key mLoadedKey;//当前原图是按这个尺寸加载的
+    private int mPlaceholderColor = RotateCircleAvatarDrawable.DEFAULT_PLACEHOLDER_COLOR;
     private Bitmap mBitmap;
-    private BitmapShader mBitmapShader;
-    private int mBitmapWidth;
-    private int mBitmapHeight;
+    private final ArrayList<Bitmap> mRetiredBitmaps = new ArrayList<Bitmap>(4);//换下后drawable可能仍在引用，先不归还
 
-    private float mDrawableRadius;
+    private RotateCircleMetrics.Listener mMetricsListener;
+    private int mReportedRetainedBitmapBytes;
 
-    private ColorFilter mColorFilter;
-
-    private boolean mReady;
-    private boolean mSetupPending;
-    private boolean mBorderOverlay;
+    private boolean mBitmapDirty = true;
+    private boolean mSettingUp;
     private boolean mDisableCircularTransformation;
 
-    private static final int DEFAULT_BORDER_TRACK_START_COLOR = Color.parseColor("#4799FE");
-    private static final int DEFAULT_BORDER_TRACK_END_COLOR = Color.parseColor("#19D7FD");
-    private static final int DEFAULT_BORDER_ROTATE_DURATION = 1200;
-    private static final int DEFAULT_BORDER_TRACK_DURATION = 2000;
-    private static final int DEFAULT_CIRCLE_COLOR = DEFAULT_BORDER_TRACK_START_COLOR;
-    private static final int DEFAULT_BORDER_PADDING = 0;
-    private static final int DEFAULT_BORDER_COLORS_LENGTH = 50;
-    private static final float SOLID_ARC_MARGIN_ANGLE = 6f;
-
     public enum BorderStyle {
         STILL,
         ROTATE
     }
 
-    private final static SparseArray<BorderStyle> sBorderStyleArray = new SparseArray<BorderStyle>(2) {
-        {
-            append(0, BorderStyle.STILL);
-            append(1, BorderStyle.ROTATE);
+    private final RotateCircleAvatarDrawable mAvatarDrawable = new RotateCircleAvatarDrawable();
+
+    private boolean mScreenOn = true;
+    private boolean mViewportListening;
+    private final Rect mVisibleRect = new Rect();
+    private final ViewTreeObserver.OnScrollChangedListener mScrollChangedListener = new ViewTreeObserver.OnScrollChangedListener() {
+        @Override
+        public void onScrollChanged() {
+            updateBorderAnimation();
+        }
+    };
+    private final ViewTreeObserver.OnGlobalLayoutListener mGlobalLayoutListener = new ViewTreeObserver.OnGlobalLayoutListener() {
+        @Override
+        public void onGlobalLayout() {
+            updateBorderAnimation();
         }
     };
-    private BorderStyle mBorderStyle = BorderStyle.STILL;
-
-    private float mRotateAngle;
-    private ValueAnimator mRotateValueAnimator;
-    private int mBorderRotateDuration = DEFAULT_BORDER_ROTATE_DURATION;
-
-    private int mBorderTrackDuration = DEFAULT_BORDER_TRACK_DURATION;
-    private int mBorderTrackStartColor = DEFAULT_BORDER_TRACK_START_COLOR;
-    private int mBorderTrackEndColor = DEFAULT_BORDER_TRACK_END_COLOR;
-
-    private ValueAnimator mFirstSolidTrackValueAnimator;//0=>216
-    private ValueAnimator mSecondSolidValueAnimator;//216<=>36
-    private float mSolidTrackAngle;
-    private Paint mSolidTrackPaint = new Paint();
-
-    private ValueAnimator mFirstDottedTrackValueAnimator;//0=>360
-    private ValueAnimator mSencondDottedTrackValueAnimator;//360<=>108
-    private float mDottedTrackAngle;
-    private Paint mDottedTrackPaint = new Paint();
-    private DashPathEffect mDashPathEffect = new DashPathEffect(new float[]{1f, 15f}, 0f);
-
-    private int[] mBorderColors = new int[]{DEFAULT_CIRCLE_COLOR};
-    private int mBorderPadding = DEFAULT_BORDER_PADDING;
 
     public RotateCircleImageView(Context context) {
         super(context);
@@ -138,38 +112,21 @@ public class RotateCircleImageView extends ImageView {
 
     public RotateCircleImageView(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
-        TypedArray typedArray = context.obtainStyledAttributes(attrs, R.styleable.RotateCircleImageView, defStyle, 0);
-        try {
-            mBorderWidth = typedArray.getDimensionPixelSize(R.styleable.RotateCircleImageView_rciv_border_width, DEFAULT_BORDER_WIDTH);
-            mBorderOverlay = typedArray.getBoolean(R.styleable.RotateCircleImageView_rciv_border_overlay, DEFAULT_BORDER_OVERLAY);
-            mCircleBackgroundColor = typedArray.getColor(R.styleable.RotateCircleImageView_rciv_circle_background_color,
-                    DEFAULT_CIRCLE_BACKGROUND_COLOR);
-
-            final int borderColorsId = typedArray.getResourceId(R.styleable.RotateCircleImageView_rciv_border_colors, 0);
-            mBorderPadding = typedArray.getDimensionPixelSize(R.styleable.RotateCircleImageView_rciv_border_padding, DEFAULT_BORDER_PADDING);
-            mBorderTrackStartColor = typedArray.getColor(R.styleable.RotateCircleImageView_rciv_border_track_start_color, DEFAULT_BORDER_TRACK_START_COLOR);
-            mBorderTrackEndColor = typedArray.getColor(R.styleable.RotateCircleImageView_rciv_border_track_start_color, DEFAULT_BORDER_TRACK_END_COLOR);
-            mBorderTrackDuration = typedArray.getInt(R.styleable.RotateCircleImageView_rciv_border_track_duration, DEFAULT_BORDER_TRACK_DURATION);
-            mBorderRotateDuration = typedArray.getInt(R.styleable.RotateCircleImageView_rciv_border_rotate_duration, DEFAULT_BORDER_ROTATE_DURATION);
-            BorderStyle circleStyle = sBorderStyleArray.get(typedArray.getInt(R.styleable.RotateCircleImageView_rciv_border_style, BorderStyle.STILL.ordinal()));
-            setBorderStyle(circleStyle);
-            if (borderColorsId != 0) {
-                mBorderColors = getResources().getIntArray(borderColorsId);
-            }
-        } finally {
-            typedArray.recycle();
-        }
+        AvatarStyle style = AvatarStyle.obtain(context, attrs, defStyle);//同样属性的view共用一次解析结果
+        mBitmapQualityMargin = style.mBitmapQualityMargin;
+        mBitmapConfig = style.mBitmapConfig;
+        mBitmapMipMap = style.mBitmapMipMap;
+        mPlaceholderColor = style.mPlaceholderColor;
+        mAvatarDrawable.setStyle(style);
+        updateBorderAnimation();
         init();
     }
 
     private void init() {
         super.setScaleType(SCALE_TYPE);
-        mReady = true;
-
-        if (mSetupPending) {
-            setup();
-            mSetupPending = false;
-        }
+        mAvatarDrawable.setCallback(this);
+        updateAvatarDrawableBounds();
+        invalidateBitmap();
     }
 
     @Override
@@ -193,72 +150,83 @@ public class RotateCircleImageView extends ImageView {
 
     @Override
     protected void onDraw(Canvas canvas) {
+        if (!RotateCircleMetrics.sEnabled) {
+            drawAvatar(canvas);
+            return;
+        }
+        long startNanos = RotateCircleMetrics.begin(RotateCircleMetrics.SECTION_DRAW);
+        try {
+            drawAvatar(canvas);
+        } finally {
+            RotateCircleMetrics.endDraw(this, mMetricsListener, startNanos);
+        }
+    }
+
+    private void drawAvatar(Canvas canvas) {
         if (mDisableCircularTransformation) {
             super.onDraw(canvas);
             return;
         }
-        if (mBitmap != null) {
-            if (mCircleBackgroundColor != Color.TRANSPARENT) {
-                canvas.drawCircle(mDrawableRect.centerX(), mDrawableRect.centerY(), mDrawableRadius, mCircleBackgroundPaint);
-            }
-            canvas.drawCircle(mDrawableRect.centerX(), mDrawableRect.centerY(), mDrawableRadius, mBitmapPaint);
-        }
-        if (mBorderWidth > 0) {
-            switch (mBorderStyle) {
-                case ROTATE:
-                    drawRotateBorder(canvas);
-                    break;
-                case STILL:
-                    drawStillBorder(canvas);
-                    break;
-            }
-        }
+        mAvatarDrawable.draw(canvas);
     }
 
-    private void drawRotateBorder(Canvas canvas) {
-        canvas.rotate(mRotateAngle, mBorderRect.centerX(), mBorderRect.centerY());//实线圆弧末端转动是通过旋转整个view来实现的
-        canvas.drawArc(mBorderRect, 270f, mSolidTrackAngle, false, mSolidTrackPaint);
-        canvas.drawArc(mBorderRect, 270f, mDottedTrackAngle, false, mDottedTrackPaint);
+    @Override
+    protected boolean verifyDrawable(Drawable who) {
+        return who == mAvatarDrawable || super.verifyDrawable(who);
     }
 
-    private void drawStillBorder(Canvas canvas) {
-        for (int i = 0; i < mBorderColors.length; i++) {
-            mBorderPaint.setColor(mBorderColors[i]);
-            float startAngle = 270f + 360f / mBorderColors.length * i;
-            float arcGap = mBorderColors.length > 1 ? SOLID_ARC_MARGIN_ANGLE : 0;
-            canvas.drawArc(mBorderRect, startAngle, 360f / mBorderColors.length - arcGap, false, mBorderPaint);
+    @Override
+    public void invalidateDrawable(Drawable dr) {
+        if (dr == mAvatarDrawable && mSettingUp) {
+            return;//setup()结束时统一重绘
+        }
+        if (RotateCircleMetrics.sEnabled) {
+            RotateCircleMetrics.recordInvalidation();
         }
+        super.invalidateDrawable(dr);
+    }
+
+    /**
+     * The drawable this view draws with, e.g. to share its configuration. Its bitmap, bounds and animation are
+     * managed by the view.
+     */
+    public RotateCircleAvatarDrawable getAvatarDrawable() {
+        return mAvatarDrawable;
     }
 
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
-        setup();
+        updateAvatarDrawableBounds();
     }
 
     @Override
     public void setPadding(int left, int top, int right, int bottom) {
         super.setPadding(left, top, right, bottom);
-        setup();
+        updateAvatarDrawableBounds();
     }
 
     @Override
     public void setPaddingRelative(int start, int top, int end, int bottom) {
         super.setPaddingRelative(start, top, end, bottom);
-        setup();
+        updateAvatarDrawableBounds();
+    }
+
+    private void updateAvatarDrawableBounds() {
+        if (mAvatarDrawable == null) {
+            return;//ImageView的构造函数中可能被调用
+        }
+        mAvatarDrawable.setBounds(getPaddingLeft(), getPaddingTop(),
+                Math.max(getPaddingLeft(), getWidth() - getPaddingRight()), Math.max(getPaddingTop(), getHeight() - getPaddingBottom()));
+        invalidateBitmap();//头像尺寸变了，重新降采样
     }
 
     public int getCircleBackgroundColor() {
-        return mCircleBackgroundColor;
+        return mAvatarDrawable.getCircleBackgroundColor();
     }
 
     public void setCircleBackgroundColor(int circleBackgroundColor) {
-        if (circleBackgroundColor == mCircleBackgroundColor) {
-            return;
-        }
-        mCircleBackgroundColor = circleBackgroundColor;
-        mCircleBackgroundPaint.setColor(circleBackgroundColor);
-        invalidate();
+        mAvatarDrawable.setCircleBackgroundColor(circleBackgroundColor);
     }
 
     public void setCircleBackgroundColorResource(int circleBackgroundRes) {
@@ -266,27 +234,46 @@ public class RotateCircleImageView extends ImageView {
     }
 
     public int getBorderWidth() {
-        return mBorderWidth;
+        return mAvatarDrawable.getBorderWidth();
     }
 
     public void setBorderWidth(int borderWidth) {
-        if (borderWidth == mBorderWidth) {
+        if (borderWidth == getBorderWidth()) {
             return;
         }
-        mBorderWidth = borderWidth;
-        setup();
+        mAvatarDrawable.setBorderWidth(borderWidth);
+        invalidateBitmap();
     }
 
     public boolean isBorderOverlay() {
-        return mBorderOverlay;
+        return mAvatarDrawable.isBorderOverlay();
     }
 
     public void setBorderOverlay(boolean borderOverlay) {
-        if (borderOverlay == mBorderOverlay) {
+        if (borderOverlay == isBorderOverlay()) {
             return;
         }
-        mBorderOverlay = borderOverlay;
-        setup();
+        mAvatarDrawable.setBorderOverlay(borderOverlay);
+        invalidateBitmap();
+    }
+
+    public boolean isAvatarPrecomposed() {
+        return mAvatarDrawable.isAvatarPrecomposed();
+    }
+
+    /**
+     * When enabled, the circle-cropped, scaled and color-filtered avatar is rendered once per layout into a bitmap
+     * and then drawn with a plain drawBitmap, trading {@link #getAvatarLayerByteCount()} bytes for a cheaper draw.
+     */
+    public void setAvatarPrecomposed(boolean avatarPrecomposed) {
+        mAvatarDrawable.setAvatarPrecomposed(avatarPrecomposed);
+    }
+
+    /**
+     * @return the bytes currently held by the precomposed avatar bitmap, 0 if there is none
+     */
+    public int getAvatarLayerByteCount() {
+        return mAvatarDrawable.getAvatarLayerByteCount();
     }
 
     public boolean isDisableCircularTransformation() {
@@ -301,52 +288,385 @@ public class RotateCircleImageView extends ImageView {
         initializeBitmap();
     }
 
-    @Override
-    public void setImageBitmap(Bitmap bm) {
-        super.setImageBitmap(bm);
+    public float getBitmapQualityMargin() {
+        return mBitmapQualityMargin;
+    }
+
+    /**
+     * Source bitmaps are downsampled to at most {@code margin} times the size of the displayed circle, e.g. 1.5f keeps
+     * 50% more pixels than needed for sharper results when the view grows. Pass 0 to keep source bitmaps untouched.
+     * Defaults to 1f.
+     */
+    public void setBitmapQualityMargin(float margin) {
+        if (margin == mBitmapQualityMargin) {
+            return;
+        }
+        mBitmapQualityMargin = margin;
         initializeBitmap();
     }
 
+    public boolean isBitmapMipMap() {
+        return mBitmapMipMap;
+    }
+
+    /**
+     * Generates mipmaps for avatar bitmaps that are drawn at less than half their size, e.g. large drawables
+     * rasterized while downsampling is disabled, so that minified sampling stays smooth with hardware acceleration.
+     * Only applies to bitmaps this view rasterized or downsampled itself: bitmaps passed to
+     * {@link #setImageBitmap(Bitmap)} or shared with other drawables are never modified, call
+     * {@link Bitmap#setHasMipMap(boolean)} on those directly. Only has an effect from API 17 on. Defaults to false.
+     */
+    public void setBitmapMipMap(boolean mipMap) {
+        if (mipMap == mBitmapMipMap) {
+            return;
+        }
+        mBitmapMipMap = mipMap;
+        if (mipMap && mBitmap != null) {
+            prepareBitmap(mBitmap);
+            invalidate();
+        }
+    }
+
+    /**
+     * @return the config of the bitmaps this view creates, null if picked per image
+     */
+    public Bitmap.Config getBitmapConfig() {
+        return mBitmapConfig;
+    }
+
+    /**
+     * Sets the config of the bitmaps this view decodes, downsamples or rasterizes the avatar into. Only ARGB_8888 and
+     * RGB_565 are supported. null, the default, picks RGB_565 for images without alpha, which halves their memory,
+     * and ARGB_8888 otherwise. Bitmaps passed to {@link #setImageBitmap(Bitmap)} are only converted when they need to
+     * be downsampled anyway.
+     */
+    public void setBitmapConfig(Bitmap.Config config) {
+        if (config != null && config != Bitmap.Config.ARGB_8888 && config != Bitmap.Config.RGB_565) {
+            throw new IllegalArgumentException(String.format("Bitmap config %s not supported.", config));
+        }
+        if (config == mBitmapConfig) {
+            return;
+        }
+        mBitmapConfig = config;
+        initializeBitmap();
+    }
+
+    /**
+     * @return the bytes of the bitmaps this view keeps alive: the source bitmap if it could not be released, the
+     * downsampled bitmap and the precomposed avatar
+     */
+    public int getRetainedBitmapByteCount() {
+        int byteCount = 0;
+        if (mSourceBitmap != null) {
+            byteCount += mSourceBitmap.getByteCount();
+        }
+        if (mBitmap != null && mBitmap != mSourceBitmap) {
+            byteCount += mBitmap.getByteCount();
+        }
+        return byteCount + getAvatarLayerByteCount();
+    }
+
+    /**
+     * @return the style this view was inflated or last set with; setters called since then are not reflected
+     */
+    public AvatarStyle getStyle() {
+        return mAvatarDrawable.getStyle();
+    }
+
+    /**
+     * Applies every attribute of a shared style at once, e.g. one built once for all the views of a list, at the
+     * cost of a single setup and invalidation.
+     */
+    public void setStyle(AvatarStyle style) {
+        boolean bitmapChanged = style.mBitmapQualityMargin != mBitmapQualityMargin
+                || style.mBitmapConfig != mBitmapConfig;
+        boolean mipMapEnabled = style.mBitmapMipMap && !mBitmapMipMap;
+        boolean settingUp = mSettingUp;
+        mSettingUp = true;//各属性只标脏，drawable的重绘请求也在此期间忽略
+        try {
+            mAvatarDrawable.setStyle(style);
+            mBitmapQualityMargin = style.mBitmapQualityMargin;
+            mBitmapConfig = style.mBitmapConfig;
+            mBitmapMipMap = style.mBitmapMipMap;
+            mPlaceholderColor = style.mPlaceholderColor;
+            if (style.mBorderStyle == BorderStyle.ROTATE && getWindowToken() != null) {
+                refreshBorderAnimationAllowed();
+            }
+            updateBorderAnimation();
+        } finally {
+            mSettingUp = settingUp;
+        }
+        if (bitmapChanged) {
+            initializeBitmap();//按新的余量和config重新降采样
+        } else {
+            if (mipMapEnabled && mBitmap != null) {
+                prepareBitmap(mBitmap);
+            }
+            invalidateBitmap();//边框宽度等几何属性可能已变
+        }
+    }
+
+    public RotateCircleMetrics.Listener getMetricsListener() {
+        return mMetricsListener;
+    }
+
+    /**
+     * Sets a listener this view reports its draw, setup and conversion costs to, while
+     * {@link RotateCircleMetrics#setEnabled(boolean) metrics are enabled}.
+     */
+    public void setMetricsListener(RotateCircleMetrics.Listener listener) {
+        mMetricsListener = listener;
+    }
+
+    public int getPlaceholderColor() {
+        return mPlaceholderColor;
+    }
+
+    /**
+     * Sets the color of the circle shown while an asynchronous load is in flight. Transparent, the default, shows
+     * nothing.
+     */
+    public void setPlaceholderColor(int placeholderColor) {
+        if (placeholderColor == mPlaceholderColor) {
+            return;
+        }
+        mPlaceholderColor = placeholderColor;
+        invalidateBitmap();
+    }
+
     @Override
-    public void setImageDrawable(Drawable drawable) {
+    public void setImageDrawable(Drawable drawable) {//setImageBitmap()也经由这里
+        clearPendingLoad();
+        setImageSource(null, false);
+        mOwnsDrawable = false;
         super.setImageDrawable(drawable);
         initializeBitmap();
     }
 
+    /**
+     * Decodes the resource at full size right away on the calling thread, as ImageView does, and downsamples it once
+     * the view is laid out, unless the view is already laid out and {@link AvatarCache} holds the avatar at its size,
+     * e.g. from an {@link AvatarPrefetcher}. Prefer {@link #loadImageResource(int)} wherever the image can arrive a
+     * moment later, e.g. in lists; this method suits wrap_content views, which need the image's intrinsic size to
+     * measure.
+     */
     @Override
     public void setImageResource(int resId) {
-        super.setImageResource(resId);
+        clearPendingLoad();
+        setImageSource(resId != 0 ? AvatarLoader.Source.of(resId) : null, false);
+        mOwnsDrawable = true;
+        if (mImageSource != null) {
+            setImageSourceDrawable(mImageSource);
+        } else {
+            super.setImageResource(resId);
+        }
         initializeBitmap();
     }
 
+    /**
+     * Decodes the image right away on the calling thread, which for content or file URIs means disk I/O on the main
+     * thread. Prefer {@link #loadImageURI(Uri)}.
+     *
+     * @see #setImageResource(int)
+     */
     @Override
     public void setImageURI(Uri uri) {
-        super.setImageURI(uri);
+        clearPendingLoad();
+        setImageSource(uri != null ? AvatarLoader.Source.of(uri) : null, false);
+        mOwnsDrawable = true;
+        if (mImageSource != null) {
+            setImageSourceDrawable(mImageSource);
+        } else {
+            super.setImageURI(null);
+        }
         initializeBitmap();
     }
 
-    @Override
-    public void setColorFilter(ColorFilter cf) {
-        if (cf == mColorFilter) {
+    /**
+     * Takes the avatar from {@link AvatarCache} if it holds it at this view's size, and decodes the source
+     * synchronously otherwise.
+     */
+    private void setImageSourceDrawable(AvatarLoader.Source source) {
+        AvatarCache.Key key = newAvatarCacheKey(source);
+        Bitmap cached = key != null ? AvatarCache.get(key) : null;
+        if (cached != null) {
+            mLoadedKey = key;
+            super.setImageDrawable(new BitmapDrawable(getResources(), cached));
+        } else if (source.mUri != null) {
+            mLoadedKey = null;
+            super.setImageURI(source.mUri);
+        } else {
+            mLoadedKey = null;
+            super.setImageResource(source.mResId);
+        }
+    }
+
+    private void setImageSource(AvatarLoader.Source source, boolean async) {
+        mImageSource = source;
+        mImageSourceAsync = async;
+        mLoadedKey = null;
+    }
+
+    /**
+     * Like {@link #setImageURI(Uri)}, but decodes and downsamples the image on a background thread. The placeholder
+     * circle is shown until the image arrives, and the load is cancelled if another image is set or the view is
+     * detached first. The image is decoded for the laid out avatar size, so the view needs a size that does not
+     * depend on the image, i.e. not wrap_content.
+     */
+    public void loadImageURI(Uri uri) {
+        if (uri == null) {
+            setImageDrawable(null);
             return;
         }
-        mColorFilter = cf;
-        applyColorFilter();
-        invalidate();
+        loadAsync(AvatarLoader.Source.of(uri));
     }
 
-    @Override
-    public ColorFilter getColorFilter() {
-        return mColorFilter;
+    /**
+     * Like {@link #setImageResource(int)}, but decodes and downsamples the image on a background thread.
+     *
+     * @see #loadImageURI(Uri)
+     */
+    public void loadImageResource(int resId) {
+        if (resId == 0) {
+            setImageDrawable(null);
+            return;
+        }
+        loadAsync(AvatarLoader.Source.of(resId));
+    }
+
+    private void loadAsync(AvatarLoader.Source source) {
+        if (source.equals(mPendingSource)) {
+            return;
+        }
+        clearPendingLoad();
+        setImageSource(source, true);
+        mOwnsDrawable = true;
+        super.setImageDrawable(null);
+        initializeBitmap();
+        mPendingSource = source;
+        startPendingLoad();
+    }
+
+    private void startPendingLoad() {
+        if (mPendingSource == null || mLoadRequest != null || getWindowToken() == null) {
+            return;
+        }
+        AvatarCache.Key key = newAvatarCacheKey(mPendingSource);
+        if (key == null) {
+            return;
+        }
+        Bitmap cached = AvatarCache.get(key);
+        if (cached != null) {
+            onAvatarLoaded(key, cached);//命中缓存，无需解码
+            return;
+        }
+        final AvatarCache.Key loadKey = key;
+        mLoadRequest = AvatarLoader.load(getContext(), key, new AvatarLoader.Callback() {
+            @Override
+            public void onLoaded(Bitmap bitmap) {
+                mLoadRequest = null;
+                onAvatarLoaded(loadKey, bitmap);
+            }
+        });
+    }
+
+    private void onAvatarLoaded(AvatarCache.Key key, Bitmap bitmap) {
+        mPendingSource = null;
+        if (bitmap != null) {
+            mLoadedKey = key;
+            super.setImageDrawable(new BitmapDrawable(getResources(), bitmap));
+        }
+        initializeBitmap();
+    }
+
+    /**
+     * Decodes the image source again for a larger avatar, when the current source bitmap was downsampled or loaded
+     * for a smaller one. The current bitmap stays on screen until an asynchronous load delivers.
+     */
+    private void reloadImageSource() {
+        if (mImageSourceAsync) {
+            cancelLoad();
+            mPendingSource = mImageSource;//setup()随后发起加载
+        } else {
+            setImageSourceDrawable(mImageSource);
+            initializeBitmap();
+        }
+    }
+
+    /**
+     * @return whether the source bitmap has fewer pixels than its image source can provide at the current size
+     */
+    private boolean canReloadImageSource() {
+        if (mImageSource == null || mPendingSource != null) {
+            return false;
+        }
+        if (getDrawable() instanceof DownsampledBitmapDrawable) {
+            return true;
+        }
+        if (mLoadedKey == null) {
+            return false;//原图已完整解码
+        }
+        AvatarCache.Key key = newAvatarCacheKey(mImageSource);
+        return key != null && (key.mWidth > mLoadedKey.mWidth || key.mHeight > mLoadedKey.mHeight
+                || key.mMargin > mLoadedKey.mMargin);
+    }
+
+    /**
+     * The key a view with default settings uses for an avatar of the given size.
+     */
+    static AvatarCache.Key newAvatarCacheKey(AvatarLoader.Source source, int width, int height) {
+        return new AvatarCache.Key(source, width, height, DEFAULT_BITMAP_QUALITY_MARGIN, DEFAULT_BITMAP_CONFIG);
+    }
+
+    /**
+     * @return the key this view looks the avatar up with at its current size, quality margin and bitmap config, null
+     * before the first layout
+     */
+    AvatarCache.Key newAvatarCacheKey(AvatarLoader.Source source) {
+        RectF avatarRect = mAvatarDrawable.getAvatarRect();
+        if (avatarRect.isEmpty()) {
+            return null;
+        }
+        return new AvatarCache.Key(source, (int) Math.ceil(avatarRect.width()), (int) Math.ceil(avatarRect.height()),
+                mBitmapQualityMargin, mBitmapConfig);
+    }
+
+    /**
+     * @return the diameter in pixels of the displayed avatar circle, 0 before the first layout
+     */
+    public int getAvatarDiameter() {
+        return (int) Math.ceil(mAvatarDrawable.getAvatarRadius() * 2);
+    }
+
+    private void cancelLoad() {
+        if (mLoadRequest != null) {
+            mLoadRequest.cancel();
+            mLoadRequest = null;
+        }
     }
 
-    private void applyColorFilter() {
-        if (mBitmapPaint != null) {
-            mBitmapPaint.setColorFilter(mColorFilter);
+    private void clearPendingLoad() {
+        cancelLoad();
+        mPendingSource = null;
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter cf) {
+        if (mAvatarDrawable == null) {
+            return;//ImageView的构造函数中可能被调用
         }
+        mAvatarDrawable.setColorFilter(cf);
+    }
+
+    @Override
+    public ColorFilter getColorFilter() {
+        return mAvatarDrawable.getColorFilter();
     }
 
-    private Bitmap getBitmapFromDrawable(Drawable drawable) {
+    /**
+     * @param config the config to rasterize into, null to pick one from the drawable's opacity
+     */
+    static Bitmap getBitmapFromDrawable(Drawable drawable, Bitmap.Config config) {
         if (drawable == null) {
             return null;
         }
@@ -357,11 +677,14 @@ public class RotateCircleImageView extends ImageView {
 
         try {
             Bitmap bitmap;
+            if (config == null) {
+                config = resolveBitmapConfig(null, drawable.getOpacity() != PixelFormat.OPAQUE);
+            }
 
             if (drawable instanceof ColorDrawable) {
-                bitmap = Bitmap.createBitmap(COLORDRAWABLE_DIMENSION, COLORDRAWABLE_DIMENSION, BITMAP_CONFIG);
+                bitmap = BitmapPool.get(COLORDRAWABLE_DIMENSION, COLORDRAWABLE_DIMENSION, config);
             } else {
-                bitmap = Bitmap.createBitmap(drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight(), BITMAP_CONFIG);
+                bitmap = BitmapPool.get(drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight(), config);
             }
 
             Canvas canvas = new Canvas(bitmap);
@@ -375,318 +698,489 @@ public class RotateCircleImageView extends ImageView {
     }
 
     private void initializeBitmap() {
+        Bitmap previousSourceBitmap = mOwnedSourceBitmap;
+        Bitmap previousBitmap = mBitmap != mSourceBitmap ? mBitmap : null;//降采样图总是本view创建的
+        mOwnedSourceBitmap = null;
+        mBitmapReleased = false;
         if (mDisableCircularTransformation) {
-            mBitmap = null;
+            mSourceBitmap = null;
         } else {
-            mBitmap = getBitmapFromDrawable(getDrawable());
+            Drawable drawable = getDrawable();
+            mSourceBitmap = convertDrawable(drawable);
+            mSourceBitmapShared = !mOwnsDrawable && drawable instanceof BitmapDrawable;
+            if (drawable instanceof DownsampledBitmapDrawable
+                    || (drawable != null && !(drawable instanceof BitmapDrawable))) {
+                mOwnedSourceBitmap = mSourceBitmap;
+            }
         }
-        setup();
+        mBitmap = mSourceBitmap;
+        retireBitmap(previousSourceBitmap);
+        retireBitmap(previousBitmap);
+        invalidateBitmap();
     }
 
-    private void setup() {
-        if (!mReady) {
-            mSetupPending = true;
-            return;
+    private Bitmap convertDrawable(Drawable drawable) {
+        if (!RotateCircleMetrics.sEnabled || drawable == null || drawable instanceof BitmapDrawable) {
+            return getBitmapFromDrawable(drawable, mBitmapConfig);
         }
-
-        if (getWidth() == 0 && getHeight() == 0) {
-            return;
+        Bitmap bitmap = null;
+        long startNanos = RotateCircleMetrics.begin(RotateCircleMetrics.SECTION_CONVERT);
+        try {
+            bitmap = getBitmapFromDrawable(drawable, mBitmapConfig);
+            return bitmap;
+        } finally {
+            RotateCircleMetrics.endConversion(this, mMetricsListener, startNanos,
+                    bitmap != null ? bitmap.getByteCount() : 0);
         }
+    }
 
-        if (mBitmap != null) {
-            mBitmapPaint.setAntiAlias(true);
-            mBitmapShader = new BitmapShader(mBitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
-            mBitmapPaint.setShader(mBitmapShader);
-            mBitmapHeight = mBitmap.getHeight();
-            mBitmapWidth = mBitmap.getWidth();
-        }
+    /**
+     * Keeps {@link RotateCircleMetrics#getRetainedBitmapByteCount()} in step with this view, counting nothing while
+     * it is detached.
+     */
+    private void reportRetainedBitmapBytes(boolean attached) {
+        int byteCount = attached ? getRetainedBitmapByteCount() : 0;
+        RotateCircleMetrics.addRetainedBitmapBytes(byteCount - mReportedRetainedBitmapBytes);
+        mReportedRetainedBitmapBytes = byteCount;
+    }
 
-        mBorderPaint.setStyle(Paint.Style.STROKE);
-        mBorderPaint.setAntiAlias(true);
-        mBorderPaint.setStrokeWidth(mBorderWidth);
-        mBorderPaint.setStrokeCap(Paint.Cap.ROUND);
+    /**
+     * Queues a bitmap this view no longer needs for {@link #releaseRetiredBitmaps()}: until the drawable has switched
+     * to its replacement, its shader still points at it, and a pooled bitmap may be erased by another view at once.
+     */
+    private void retireBitmap(Bitmap bitmap) {
+        if (bitmap != null) {
+            mRetiredBitmaps.add(bitmap);
+        }
+    }
 
-        mCircleBackgroundPaint.setStyle(Paint.Style.FILL);
-        mCircleBackgroundPaint.setAntiAlias(true);
-        mCircleBackgroundPaint.setColor(mCircleBackgroundColor);
+    private void releaseRetiredBitmaps() {
+        for (int i = 0; i < mRetiredBitmaps.size(); i++) {
+            releaseBitmap(mRetiredBitmaps.get(i));
+        }
+        mRetiredBitmaps.clear();
+    }
 
-        mBorderRect.set(calculateBounds());
-        mBorderRect.inset(mBorderWidth / 2.0f, mBorderWidth / 2.0f);
+    /**
+     * Returns a bitmap this view created to the pool, unless it is still drawn by this view or wrapped by the image
+     * drawable.
+     */
+    private void releaseBitmap(Bitmap bitmap) {
+        if (bitmap == null || bitmap == mSourceBitmap || bitmap == mBitmap || bitmap == mAvatarDrawable.getBitmap()) {
+            return;
+        }
+        Drawable drawable = getDrawable();
+        if (drawable instanceof BitmapDrawable && ((BitmapDrawable) drawable).getBitmap() == bitmap) {
+            return;
+        }
+        BitmapPool.put(bitmap);
+    }
 
-        mDrawableRect.set(calculateBounds());
-        if (mBorderPadding > 0) {
-            mDrawableRect.inset(mBorderPadding, mBorderPadding);
+    /**
+     * Returns the bitmaps that can be rebuilt from the image drawable to the pool while the view is detached: the
+     * downsampled bitmap, and the source if it was rasterized from a drawable that is not a bitmap.
+     */
+    private void releaseRecreatableBitmaps() {
+        if (mSourceBitmap == null) {
+            return;
         }
-        if (!mBorderOverlay && mBorderWidth > 0) {
-            mDrawableRect.inset(mBorderWidth - 1.0f, mBorderWidth - 1.0f);
+        Bitmap bitmap = mBitmap != mSourceBitmap ? mBitmap : null;
+        Bitmap sourceBitmap = null;
+        mBitmap = mSourceBitmap;
+        if (mOwnedSourceBitmap == mSourceBitmap && !(getDrawable() instanceof BitmapDrawable)) {
+            sourceBitmap = mSourceBitmap;
+            mSourceBitmap = null;
+            mOwnedSourceBitmap = null;
+            mBitmap = null;
+            mBitmapReleased = true;
         }
-        mDrawableRadius = Math.min(mDrawableRect.height() / 2.0f, mDrawableRect.width() / 2.0f);
+        if (bitmap == null && sourceBitmap == null) {
+            return;
+        }
+        mAvatarDrawable.setBitmap(mBitmap);
+        releaseBitmap(bitmap);
+        releaseBitmap(sourceBitmap);
+        releaseRetiredBitmaps();
+        mBitmapDirty = true;//attach后重新降采样
+    }
 
-        Shader shader = new LinearGradient(0f, 0f, getWidth(),
-                getHeight(), mBorderTrackStartColor, mBorderTrackEndColor, Shader.TileMode.CLAMP);
-        mSolidTrackPaint.setShader(shader);
-        mSolidTrackPaint.setStyle(Paint.Style.STROKE);
-        mSolidTrackPaint.setAntiAlias(true);
-        mSolidTrackPaint.setStrokeWidth(mBorderWidth);
-        mSolidTrackPaint.setStrokeCap(Paint.Cap.ROUND);
+    /**
+     * @return {@code config}, or the cheapest config that keeps the image's alpha if it is null
+     */
+    static Bitmap.Config resolveBitmapConfig(Bitmap.Config config, boolean hasAlpha) {
+        if (config != null) {
+            return config;
+        }
+        return hasAlpha ? Bitmap.Config.ARGB_8888 : Bitmap.Config.RGB_565;
+    }
 
-        mDottedTrackPaint = new Paint(mSolidTrackPaint);
-        mDottedTrackPaint.setPathEffect(mDashPathEffect);
+    /**
+     * Scales the source bitmap down to what the avatar circle actually displays, converting it to the bitmap config
+     * on the way, and drops the source if nobody else holds it. A source the view owns is also converted when it
+     * needs no scaling. A source that was dropped or loaded for a smaller avatar is decoded again from its resource or
+     * URI once the avatar needs more pixels than it has.
+     */
+    private void downsampleBitmap() {
+        Bitmap previousBitmap = mBitmap != mSourceBitmap ? mBitmap : null;
+        scaleSourceBitmap();
+        retireBitmap(previousBitmap);
+    }
 
-        applyColorFilter();
-        updateShaderMatrix();
-        invalidate();
+    private void scaleSourceBitmap() {
+        RectF avatarRect = mAvatarDrawable.getAvatarRect();
+        if (mSourceBitmap == null || mBitmapQualityMargin <= 0 || avatarRect.isEmpty()) {
+            mBitmap = mSourceBitmap;
+            return;
+        }
+        int sourceWidth = mSourceBitmap.getWidth();
+        int sourceHeight = mSourceBitmap.getHeight();
+        Bitmap.Config config = resolveBitmapConfig(mBitmapConfig, mSourceBitmap.hasAlpha());
+        float scale = Math.max(avatarRect.width() / sourceWidth, avatarRect.height() / sourceHeight) * mBitmapQualityMargin;
+        if (scale > 1f && canReloadImageSource()) {
+            reloadImageSource();//头像变大了，原图还能提供更多像素
+            return;
+        }
+        if (scale >= 1f && (mSourceBitmapShared || config == mSourceBitmap.getConfig())) {
+            mBitmap = mSourceBitmap;
+            return;
+        }
+        scale = Math.min(scale, 1f);
+        int width = Math.max(1, (int) Math.ceil(sourceWidth * scale));
+        int height = Math.max(1, (int) Math.ceil(sourceHeight * scale));
+        if (mBitmap != null && mBitmap != mSourceBitmap && mBitmap.getWidth() == width && mBitmap.getHeight() == height
+                && mBitmap.getConfig() == config) {
+            return;
+        }
+        try {
+            mBitmap = scaleBitmap(mSourceBitmap, width, height, config);
+        } catch (OutOfMemoryError e) {
+            mBitmap = mSourceBitmap;
+            return;
+        }
+        if (!mSourceBitmapShared) {
+            if (mOwnsDrawable) {
+                Drawable drawable = getDrawable();
+                super.setImageDrawable(new DownsampledBitmapDrawable(getResources(), mBitmap,
+                        drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight()));
+            }
+            Bitmap previousSourceBitmap = mSourceBitmap;
+            mSourceBitmap = mBitmap;
+            if (previousSourceBitmap == mOwnedSourceBitmap) {
+                retireBitmap(previousSourceBitmap);//资源或缓存中的原图可能被共享，不能归还
+            }
+            mOwnedSourceBitmap = mBitmap;
+        }
     }
 
-    private RectF calculateBounds() {
-        int availableWidth = getWidth() - getPaddingLeft() - getPaddingRight();
-        int availableHeight = getHeight() - getPaddingTop() - getPaddingBottom();
+    /**
+     * Requests mipmaps for bitmaps of this view's own that are still much larger than the circle, then starts the
+     * texture upload ahead of the draw, for any bitmap: the upload does not change the bitmap, it only happens
+     * earlier. Called from {@link #setup()} when a bitmap is bound or the view is laid out, so the upload is already
+     * under way when the first draw after it comes. From N on it runs asynchronously on the render thread.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    private void prepareBitmap(Bitmap bitmap) {
+        if (mBitmapMipMap && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1 && !bitmap.hasMipMap()
+                && isOwnedBitmap(bitmap)) {
+            RectF avatarRect = mAvatarDrawable.getAvatarRect();
+            float scale = Math.max(avatarRect.width() / bitmap.getWidth(), avatarRect.height() / bitmap.getHeight());
+            if (scale <= MIPMAP_MAX_SCALE) {
+                bitmap.setHasMipMap(true);
+            }
+        }
+        bitmap.prepareToDraw();
+    }
 
-        int sideLength = Math.min(availableWidth, availableHeight);
+    /**
+     * @return whether the bitmap was rasterized or downsampled by this view, so that changing it affects nobody else
+     */
+    private boolean isOwnedBitmap(Bitmap bitmap) {
+        return bitmap == mOwnedSourceBitmap || bitmap != mSourceBitmap;//降采样图总是本view创建的
+    }
 
-        float left = getPaddingLeft() + (availableWidth - sideLength) / 2f;
-        float top = getPaddingTop() + (availableHeight - sideLength) / 2f;
+    private static Bitmap scaleBitmap(Bitmap source, int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = BitmapPool.get(width, height, config);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.scale((float) width / source.getWidth(), (float) height / source.getHeight());
+        canvas.drawBitmap(source, 0, 0, sScalePaint);
+        return bitmap;
+    }
 
-        return new RectF(left, top, left + sideLength, top + sideLength);
+    /**
+     * Brings the avatar bitmap up to date right away and schedules a draw, so that downsampling and swapping the
+     * image drawable happen at bind or layout time and never in the middle of a draw. Before the first layout the
+     * bitmap stays stale until the size is known.
+     */
+    private void invalidateBitmap() {
+        mBitmapDirty = true;
+        if (!mSettingUp) {
+            setup();
+            if (RotateCircleMetrics.sEnabled) {
+                RotateCircleMetrics.recordInvalidation();
+            }
+            invalidate();
+        }
     }
 
-    private void updateShaderMatrix() {
-        if (mBitmap == null) {
+    /**
+     * Hands the downsampled bitmap and the placeholder state over to the drawable, if they changed.
+     */
+    private void setup() {
+        if (!mBitmapDirty || mSettingUp || (getWidth() == 0 && getHeight() == 0)) {
             return;
         }
-        float scale;
-        float dx = 0;
-        float dy = 0;
-
-        mShaderMatrix.set(null);
+        mSettingUp = true;
+        boolean metrics = RotateCircleMetrics.sEnabled;
+        long startNanos = metrics ? RotateCircleMetrics.begin(RotateCircleMetrics.SECTION_SETUP) : 0;
+        try {
+            while (mBitmapDirty) {//加载命中缓存时会再次标脏
+                mBitmapDirty = false;
+                downsampleBitmap();
+                if (mBitmap != null && mBitmap != mAvatarDrawable.getBitmap()) {
+                    prepareBitmap(mBitmap);
+                }
+                mAvatarDrawable.setBitmap(mBitmap);
+                releaseRetiredBitmaps();//drawable已换用新位图
+                mAvatarDrawable.setPlaceholderColor(mPendingSource != null ? mPlaceholderColor : Color.TRANSPARENT);
+                startPendingLoad();
+            }
+        } finally {
+            mSettingUp = false;
+            if (metrics) {
+                reportRetainedBitmapBytes(true);
+                RotateCircleMetrics.endSetup(this, mMetricsListener, startNanos);
+            }
+        }
+    }
 
-        if (mBitmapWidth * mDrawableRect.height() > mDrawableRect.width() * mBitmapHeight) {
-            scale = mDrawableRect.height() / (float) mBitmapHeight;
-            dx = (mDrawableRect.width() - mBitmapWidth * scale) * 0.5f;
+    private void updateBorderAnimation() {
+        boolean rotate = mAvatarDrawable.getBorderStyle() == BorderStyle.ROTATE;
+        setViewportListening(rotate && getWindowToken() != null);
+        if (rotate && isOnScreen()) {
+            mAvatarDrawable.start();
         } else {
-            scale = mDrawableRect.width() / (float) mBitmapWidth;
-            dy = (mDrawableRect.height() - mBitmapHeight * scale) * 0.5f;
+            mAvatarDrawable.stop();//不可见时停止动画，避免过度绘制
         }
+    }
 
-        mShaderMatrix.setScale(scale, scale);
-        mShaderMatrix.postTranslate((int) (dx + 0.5f) + mDrawableRect.left, (int) (dy + 0.5f) + mDrawableRect.top);
+    /**
+     * @return whether any pixel of this view can currently reach the display
+     */
+    private boolean isOnScreen() {
+        return mScreenOn && getWindowVisibility() == View.VISIBLE && isShown() && getGlobalVisibleRect(mVisibleRect);
+    }
 
-        mBitmapShader.setLocalMatrix(mShaderMatrix);
+    /**
+     * Watches scrolling and layout so that a rotating border clipped out of its scroll container stops animating.
+     */
+    private void setViewportListening(boolean listening) {
+        if (mViewportListening == listening) {
+            return;
+        }
+        mViewportListening = listening;
+        ViewTreeObserver observer = getViewTreeObserver();
+        if (listening) {
+            observer.addOnScrollChangedListener(mScrollChangedListener);
+            observer.addOnGlobalLayoutListener(mGlobalLayoutListener);
+        } else {
+            observer.removeOnScrollChangedListener(mScrollChangedListener);
+            observer.removeGlobalOnLayoutListener(mGlobalLayoutListener);
+        }
     }
 
-    private void startValueAnimator() {
-        if (mRotateValueAnimator == null) {
-            mRotateValueAnimator = ValueAnimator.ofFloat(0f, 360f);
-            mRotateValueAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-                @Override
-                public void onAnimationUpdate(ValueAnimator animation) {
-                    mRotateAngle = (Float) animation.getAnimatedValue();
-                    invalidate();
-                }
-            });
-            mRotateValueAnimator.setInterpolator(new LinearInterpolator());
-            mRotateValueAnimator.setDuration(mBorderRotateDuration);
-            mRotateValueAnimator.setRepeatCount(ValueAnimator.INFINITE);
-        }
-        mRotateValueAnimator.start();
-
-        if (mFirstSolidTrackValueAnimator == null) {
-            mFirstSolidTrackValueAnimator = ValueAnimator.ofFloat(0f, 216f);
-            mFirstSolidTrackValueAnimator.setDuration(mBorderTrackDuration);
-            mFirstSolidTrackValueAnimator.setRepeatCount(0);
-            mFirstSolidTrackValueAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-                @Override
-                public void onAnimationUpdate(ValueAnimator animation) {
-                    mSolidTrackAngle = (Float) animation.getAnimatedValue();
-                    invalidate();
-                }
-            });
-            mFirstSolidTrackValueAnimator.addListener(new Animator.AnimatorListener() {
-                @Override
-                public void onAnimationStart(Animator animation) {
+    /**
+     * Re-reads the system settings that can turn the rotation into a static border. Only done on attach and on
+     * window visibility or focus changes, since reading settings is not free.
+     */
+    private void refreshBorderAnimationAllowed() {
+        mAvatarDrawable.setBorderAnimationAllowed(BorderAnimationClock.areAnimationsAllowed(getContext(),
+                RotateCircleAvatarDrawable.sBorderFrameRateAdaptive));
+    }
 
-                }
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (mBitmapReleased) {
+            initializeBitmap();
+        } else if (mBitmapDirty) {
+            invalidateBitmap();
+        }
+        if (getBorderStyle() == BorderStyle.ROTATE) {
+            refreshBorderAnimationAllowed();
+        }
+        updateBorderAnimation();
+        startPendingLoad();
+    }
 
-                @Override
-                public void onAnimationEnd(Animator animation) {
-                    mSecondSolidValueAnimator.start();
-                }
+    @Override
+    protected void onDetachedFromWindow() {
+        setViewportListening(false);
+        mAvatarDrawable.stop();
+        mAvatarDrawable.releaseAvatarLayer();//预合成的头像层下次绘制时重建
+        cancelLoad();//保留mPendingSource，重新attach时再加载
+        releaseRecreatableBitmaps();
+        if (mReportedRetainedBitmapBytes != 0) {
+            reportRetainedBitmapBytes(false);
+        }
+        super.onDetachedFromWindow();
+    }
 
-                @Override
-                public void onAnimationCancel(Animator animation) {
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        if (mAvatarDrawable != null) {
+            updateBorderAnimation();
+        }
+    }
 
-                }
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        if (visibility == View.VISIBLE && getBorderStyle() == BorderStyle.ROTATE) {
+            refreshBorderAnimationAllowed();
+        }
+        updateBorderAnimation();
+    }
 
-                @Override
-                public void onAnimationRepeat(Animator animation) {
-                }
-            });
-        }
-
-        if (mSecondSolidValueAnimator == null) {
-            mSecondSolidValueAnimator = ValueAnimator.ofFloat(216f, 36f);
-            mSecondSolidValueAnimator.setDuration(mBorderTrackDuration);
-            mSecondSolidValueAnimator.setRepeatCount(ValueAnimator.INFINITE);
-            mSecondSolidValueAnimator.setRepeatMode(ValueAnimator.REVERSE);
-            mSecondSolidValueAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-                @Override
-                public void onAnimationUpdate(ValueAnimator animation) {
-                    mSolidTrackAngle = (Float) animation.getAnimatedValue();
-                    invalidate();
-                }
-            });
-        }
-        mFirstSolidTrackValueAnimator.start();
-
-        if (mFirstDottedTrackValueAnimator == null) {
-            mFirstDottedTrackValueAnimator = ValueAnimator.ofFloat(0f, 360f);
-            mFirstDottedTrackValueAnimator.setInterpolator(new LinearInterpolator());
-            mFirstDottedTrackValueAnimator.setDuration(mBorderTrackDuration);
-            mFirstDottedTrackValueAnimator.setRepeatCount(0);
-            mFirstDottedTrackValueAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-                @Override
-                public void onAnimationUpdate(ValueAnimator animation) {
-                    mDottedTrackAngle = (Float) animation.getAnimatedValue();
-                    invalidate();
-                }
-            });
-            mFirstDottedTrackValueAnimator.addListener(new Animator.AnimatorListener() {
-                @Override
-                public void onAnimationStart(Animator animation) {
+    @Override
+    public void onWindowFocusChanged(boolean hasWindowFocus) {
+        super.onWindowFocusChanged(hasWindowFocus);
+        if (hasWindowFocus && getBorderStyle() == BorderStyle.ROTATE) {
+            refreshBorderAnimationAllowed();//例如从下拉通知栏切换省电模式后返回
+            updateBorderAnimation();
+        }
+    }
 
-                }
+    @Override
+    public void onScreenStateChanged(int screenState) {
+        super.onScreenStateChanged(screenState);
+        mScreenOn = screenState == SCREEN_STATE_ON;
+        updateBorderAnimation();
+    }
 
-                @Override
-                public void onAnimationEnd(Animator animation) {
-                    mSencondDottedTrackValueAnimator.start();
-                }
+    public void setBorderColors(int[] borderColors) {
+        mAvatarDrawable.setBorderColors(borderColors);
+    }
 
-                @Override
-                public void onAnimationCancel(Animator animation) {
+    public void setBorderTrackDuration(int borderTrackDuration) {
+        mAvatarDrawable.setBorderTrackDuration(borderTrackDuration);
+    }
 
-                }
+    public int getBorderFrameRate() {
+        return mAvatarDrawable.getBorderFrameRate();
+    }
 
-                @Override
-                public void onAnimationRepeat(Animator animation) {
-                }
-            });
-        }
-
-        if (mSencondDottedTrackValueAnimator == null) {
-            mSencondDottedTrackValueAnimator = ValueAnimator.ofFloat(360f, 108f);
-            mSencondDottedTrackValueAnimator.setInterpolator(new LinearInterpolator());
-            mSencondDottedTrackValueAnimator.setDuration(mBorderTrackDuration);
-            mSencondDottedTrackValueAnimator.setRepeatCount(-1);
-            mSencondDottedTrackValueAnimator.setRepeatMode(ValueAnimator.REVERSE);
-            mSencondDottedTrackValueAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-                @Override
-                public void onAnimationUpdate(ValueAnimator animation) {
-                    mDottedTrackAngle = (Float) animation.getAnimatedValue();
-                    invalidate();
-                }
-            });
-        }
-        mFirstDottedTrackValueAnimator.start();
+    /**
+     * Caps how often this view's rotating border repaints, e.g. 15, 30 or 60. 0, the default, falls back to
+     * {@link #setDefaultBorderFrameRate(int)}.
+     */
+    public void setBorderFrameRate(int frameRate) {
+        mAvatarDrawable.setBorderFrameRate(frameRate);
     }
 
-    private void endValueAnimator() {
-        if (mRotateValueAnimator != null) {
-            mRotateValueAnimator.end();
-        }
-        if (mFirstSolidTrackValueAnimator != null) {
-            mFirstSolidTrackValueAnimator.end();
-        }
-        if (mSecondSolidValueAnimator != null) {
-            mSecondSolidValueAnimator.end();
-        }
-        if (mFirstDottedTrackValueAnimator != null) {
-            mFirstDottedTrackValueAnimator.end();
-        }
-        if (mSencondDottedTrackValueAnimator != null) {
-            mSencondDottedTrackValueAnimator.end();
-        }
+    /**
+     * Caps how often rotating borders repaint unless a view sets its own rate. 0, the default, means the display
+     * rate.
+     */
+    public static void setDefaultBorderFrameRate(int frameRate) {
+        RotateCircleAvatarDrawable.sDefaultBorderFrameRate = frameRate;
     }
 
+    /**
+     * When enabled, rotating borders drop to 30 then 15 fps while frames overrun, recover once frames are smooth
+     * again, and render as a still border under battery saver. Borders always render still when the system
+     * animator duration scale is 0.
+     */
+    public static void setBorderFrameRateAdaptive(boolean adaptive) {
+        RotateCircleAvatarDrawable.sBorderFrameRateAdaptive = adaptive;
+    }
 
-    @Override
-    protected void onVisibilityChanged(View changedView, int visibility) {
-        super.onVisibilityChanged(changedView, visibility);
-        if (visibility == View.VISIBLE) {
-            if (mBorderStyle == BorderStyle.ROTATE) {
-                startValueAnimator();
-            }
-        } else {
-            if (mBorderStyle == BorderStyle.ROTATE) {
-                endValueAnimator();//不可见时停止动画，避免过度绘制
-            }
-        }
+    public boolean isBorderRotationAtlas() {
+        return mAvatarDrawable.isBorderRotationAtlas();
     }
 
-    public void setBorderColors(int[] borderColors) {
-        if (borderColors != null && !Arrays.equals(mBorderColors, borderColors)) {
-            if (borderColors.length > DEFAULT_BORDER_COLORS_LENGTH) {
-                borderColors = Arrays.copyOfRange(borderColors, 0, DEFAULT_BORDER_COLORS_LENGTH);
-            }
-            mBorderColors = borderColors;
-            invalidate();
-        }
+    /**
+     * When enabled, the looping part of the rotating border tracks is pre-rendered into frames, one per display frame
+     * at the border frame rate, shared by every view with the same ring size, border width, track duration and frame
+     * rate, so that each animation frame is a single bitmap blit. The opening sweep is still drawn live, and so are
+     * the arcs when the frames do not fit in {@link #setBorderRotationAtlasCacheSize(int)}.
+     */
+    public void setBorderRotationAtlas(boolean rotationAtlas) {
+        mAvatarDrawable.setBorderRotationAtlas(rotationAtlas);
     }
 
-    public void setBorderTrackDuration(int borderTrackDuration) {
-        if (mBorderTrackDuration != borderTrackDuration) {
-            mBorderTrackDuration = borderTrackDuration;
-            mFirstSolidTrackValueAnimator.setDuration(mBorderTrackDuration);
-        }
+    /**
+     * Sets the memory budget, in bytes, of the pre-rendered rotation frames shared by all views, counting the frames
+     * of running animations as well as the cached ones. Defaults to 8MB.
+     */
+    public static void setBorderRotationAtlasCacheSize(int maxSize) {
+        RotationAtlas.setMaxSize(maxSize);
     }
 
     public void setBorderRotateDuration(int borderRotateDuration) {
-        if (mBorderRotateDuration != borderRotateDuration) {
-            mBorderRotateDuration = borderRotateDuration;
-            mRotateValueAnimator.setDuration(mBorderRotateDuration);
-        }
+        mAvatarDrawable.setBorderRotateDuration(borderRotateDuration);
     }
 
     public void setBorderStyle(BorderStyle borderStyle) {
-        if (mBorderStyle != borderStyle) {
-            mBorderStyle = borderStyle;
-            if (mBorderStyle == BorderStyle.ROTATE) {
-                startValueAnimator();
-            } else {
-                endValueAnimator();
+        if (getBorderStyle() != borderStyle) {
+            mAvatarDrawable.setBorderStyle(borderStyle);
+            if (borderStyle == BorderStyle.ROTATE && getWindowToken() != null) {
+                refreshBorderAnimationAllowed();
             }
-            invalidate();
+            updateBorderAnimation();
         }
     }
 
     public BorderStyle getBorderStyle() {
-        return mBorderStyle;
+        return mAvatarDrawable.getBorderStyle();
     }
 
     public void setBorderTrackStartColor(int borderTrackStartColor) {
-        if (borderTrackStartColor != mBorderTrackStartColor) {
-            mBorderTrackStartColor = borderTrackStartColor;
-            mSolidTrackPaint = null;
-            mDottedTrackPaint = null;
-        }
+        mAvatarDrawable.setBorderTrackStartColor(borderTrackStartColor);
     }
 
     public void setBorderTrackEndColor(int borderTrackEndColor) {
-        if (borderTrackEndColor != mBorderTrackEndColor) {
-            mBorderTrackEndColor = borderTrackEndColor;
-            mSolidTrackPaint = null;
-            mDottedTrackPaint = null;
-        }
+        mAvatarDrawable.setBorderTrackEndColor(borderTrackEndColor);
+    }
+
+    /**
+     * @return how many times the avatar circle has been rasterized through its BitmapShader
+     */
+    public int getAvatarRasterCount() {
+        return mAvatarDrawable.getAvatarRasterCount();
+    }
+
+    /**
+     * @return how many frames reused the cached avatar layer instead of rasterizing the avatar again
+     */
+    public int getAvatarLayerDrawCount() {
+        return mAvatarDrawable.getAvatarLayerDrawCount();
+    }
+
+    /**
+     * Sets the memory budget, in bytes, of the ring bitmaps shared by all STILL borders. Defaults to 4MB.
+     */
+    public static void setStillBorderCacheSize(int maxSize) {
+        StillBorderCache.setMaxSize(maxSize);
+    }
+
+    /**
+     * Sets the memory budget, in bytes, of the pool that rasterized and downsampled avatars are allocated from and
+     * returned to. Defaults to 4MB, 0 disables pooling.
+     */
+    public static void setBitmapPoolSize(int maxSize) {
+        BitmapPool.setMaxSize(maxSize);
     }
 
     public int getBorderPadding() {
-        return mBorderPadding;
+        return mAvatarDrawable.getBorderPadding();
     }
 
     public void setBorderPadding(int borderPadding) {
-        if (borderPadding == mBorderPadding) {
+        if (borderPadding == getBorderPadding()) {
             return;
         }
-        mBorderPadding = borderPadding;
-        setup();
+        mAvatarDrawable.setBorderPadding(borderPadding);
+        invalidateBitmap();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+
+/**
+ * Optional instrumentation of {@link RotateCircleImageView}'s hot paths: draw and setup durations, drawable
+ * conversions, retained bitmap bytes, running animations and invalidations per second, aggregated here and reported
+ * to a global or per-view {@link Listener}. From API 18 on, setup, draw and bitmap conversion also show up as trace
+ * sections in systrace.
+ * <p>
+ * Disabled by default, in which case the instrumented paths only read one static flag, so it can stay compiled into
+ * release builds. Must only be used from the main thread.
+ *
+ * @author vincanyang
+ */
+public final class RotateCircleMetrics {
+
+    public interface Listener {
+        void onDraw(RotateCircleImageView view, long durationNanos);
+
+        void onSetup(RotateCircleImageView view, long durationNanos);
+
+        /**
+         * Called when a drawable that is not a BitmapDrawable has been rasterized.
+         */
+        void onBitmapConverted(RotateCircleImageView view, long durationNanos, int byteCount);
+    }
+
+    static final String SECTION_DRAW = "RotateCircleImageView#draw";
+    static final String SECTION_SETUP = "RotateCircleImageView#setup";
+    static final String SECTION_CONVERT = "RotateCircleImageView#convertBitmap";
+
+    private static final long RATE_WINDOW_MILLIS = 1000;
+
+    static boolean sEnabled;
+    private static Listener sListener;
+
+    private static long sDrawCount;
+    private static long sDrawTimeNanos;
+    private static long sSetupCount;
+    private static long sSetupTimeNanos;
+    private static long sConversionCount;
+    private static long sConversionTimeNanos;
+    private static long sConversionByteCount;
+    private static long sRetainedBitmapByteCount;
+
+    private static long sRateWindowStart = -1;
+    private static int sRateWindowInvalidations;
+    private static float sInvalidationsPerSecond;
+
+    private RotateCircleMetrics() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Sets the listener every view reports to while metrics are enabled, in addition to its own one.
+     *
+     * @see RotateCircleImageView#setMetricsListener(Listener)
+     */
+    public static void setListener(Listener listener) {
+        sListener = listener;
+    }
+
+    public static long getDrawCount() {
+        return sDrawCount;
+    }
+
+    public static long getDrawTimeNanos() {
+        return sDrawTimeNanos;
+    }
+
+    public static long getSetupCount() {
+        return sSetupCount;
+    }
+
+    public static long getSetupTimeNanos() {
+        return sSetupTimeNanos;
+    }
+
+    public static long getConversionCount() {
+        return sConversionCount;
+    }
+
+    public static long getConversionTimeNanos() {
+        return sConversionTimeNanos;
+    }
+
+    public static long getConversionByteCount() {
+        return sConversionByteCount;
+    }
+
+    /**
+     * @return the bytes of the bitmaps attached views keep alive, as of their last setup while metrics were enabled
+     * @see RotateCircleImageView#getRetainedBitmapByteCount()
+     */
+    public static long getRetainedBitmapByteCount() {
+        return sRetainedBitmapByteCount;
+    }
+
+    /**
+     * @return how many border animations are running, an {@link AvatarGroupView} counting as one
+     */
+    public static int getActiveAnimationCount() {
+        return BorderAnimationClock.getInstance().getCallbackCount();
+    }
+
+    /**
+     * @return the invalidations of the last full second during which views invalidated
+     */
+    public static float getInvalidationsPerSecond() {
+        return sInvalidationsPerSecond;
+    }
+
+    /**
+     * Clears the counters, except the retained bytes, which views keep up to date.
+     */
+    public static void reset() {
+        sDrawCount = 0;
+        sDrawTimeNanos = 0;
+        sSetupCount = 0;
+        sSetupTimeNanos = 0;
+        sConversionCount = 0;
+        sConversionTimeNanos = 0;
+        sConversionByteCount = 0;
+        sRateWindowStart = -1;
+        sRateWindowInvalidations = 0;
+        sInvalidationsPerSecond = 0;
+    }
+
+    /**
+     * @return the start time to pass to the matching {@code end} method
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    static long begin(String section) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(section);
+        }
+        return System.nanoTime();
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static long end(long startNanos) {
+        long durationNanos = System.nanoTime() - startNanos;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+        return durationNanos;
+    }
+
+    static void endDraw(RotateCircleImageView view, Listener viewListener, long startNanos) {
+        long durationNanos = end(startNanos);
+        sDrawCount++;
+        sDrawTimeNanos += durationNanos;
+        if (sListener != null) {
+            sListener.onDraw(view, durationNanos);
+        }
+        if (viewListener != null) {
+            viewListener.onDraw(view, durationNanos);
+        }
+    }
+
+    static void endSetup(RotateCircleImageView view, Listener viewListener, long startNanos) {
+        long durationNanos = end(startNanos);
+        sSetupCount++;
+        sSetupTimeNanos += durationNanos;
+        if (sListener != null) {
+            sListener.onSetup(view, durationNanos);
+        }
+        if (viewListener != null) {
+            viewListener.onSetup(view, durationNanos);
+        }
+    }
+
+    static void endConversion(RotateCircleImageView view, Listener viewListener, long startNanos, int byteCount) {
+        long durationNanos = end(startNanos);
+        sConversionCount++;
+        sConversionTimeNanos += durationNanos;
+        sConversionByteCount += byteCount;
+        if (sListener != null) {
+            sListener.onBitmapConverted(view, durationNanos, byteCount);
+        }
+        if (viewListener != null) {
+            viewListener.onBitmapConverted(view, durationNanos, byteCount);
+        }
+    }
+
+    static void addRetainedBitmapBytes(long delta) {
+        sRetainedBitmapByteCount += delta;
+    }
+
+    static void recordInvalidation() {
+        long now = SystemClock.uptimeMillis();
+        if (sRateWindowStart < 0) {
+            sRateWindowStart = now;
+        } else if (now - sRateWindowStart >= RATE_WINDOW_MILLIS) {
+            sInvalidationsPerSecond = sRateWindowInvalidations * 1000f / (now - sRateWindowStart);
+            sRateWindowStart = now;
+            sRateWindowInvalidations = 0;
+        }
+        sRateWindowInvalidations++;
+    }
+}
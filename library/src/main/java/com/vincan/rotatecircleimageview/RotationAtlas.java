@@ -0,0 +1,239 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import com.vincan.rotatecircleimageview.core.RotateBorderCurves;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * The looping part of the ROTATE border tracks pre-rendered into frames, shared by every view with the same ring
+ * geometry, track duration and frame rate.
+ * <p>
+ * Frames are ALPHA_8 masks of the un-rotated solid and dotted arcs: views blit them through their own track shader
+ * and rotation, so the colors and the rotation are not baked in. The one-shot sweep that opens the animation is drawn
+ * live. After it, the tracks shrink and grow back symmetrically, so one frame per display frame of a single track
+ * duration covers the whole loop. Every frame is rendered when the atlas is created, so that drawing one only
+ * looks it up; a drawable obtains its atlas when its animation starts or its ring is set up, never while drawing.
+ * <p>
+ * Every atlas obtained counts against the cap until it is released, including the ones still in use. Released
+ * atlases stay cached for reuse until the cap needs their memory. Atlases must only be obtained from the main
+ * thread.
+ *
+ * @author vincanyang
+ */
+final class RotationAtlas {
+
+    static final int DEFAULT_MAX_SIZE = 8 * 1024 * 1024;
+    static final int DEFAULT_FRAME_RATE = 60;
+
+    private static int sMaxSize = DEFAULT_MAX_SIZE;
+    private static int sSize;//所有存活atlas预留的字节数，包括仍被drawable引用的
+    private static final HashMap<Key, RotationAtlas> sAtlases = new HashMap<Key, RotationAtlas>();
+    private static final LinkedHashMap<Key, RotationAtlas> sUnusedAtlases =
+            new LinkedHashMap<Key, RotationAtlas>(16, 0.75f, true);//已无引用、按最近使用排序
+
+    private final Key mKey;
+    private final Bitmap[] mFrames;
+    private final int mFrameWidth;
+    private final int mFrameHeight;
+    private int mRefCount;
+
+    //逐帧渲染时复用
+    private final RectF mBorderRect;
+    private final Paint mPaint = new Paint();
+    private final DottedTrack mDottedTrack = new DottedTrack();
+    private final Canvas mCanvas = new Canvas();
+
+    /**
+     * Drops released atlases until the given budget is met, and caps the atlases obtained from now on.
+     */
+    static synchronized void setMaxSize(int maxSize) {
+        sMaxSize = maxSize;
+        trimUnused(maxSize);
+    }
+
+    /**
+     * Must be balanced by {@link #release(RotationAtlas)}.
+     *
+     * @param frameRate    the highest rate the border animates at
+     * @param trackDuration see {@link RotateBorderCurves#trackPhase(long, int)}
+     * @return the atlas for the given ring with all of its frames rendered, or null if they do not fit in the cap
+     */
+    static synchronized RotationAtlas obtain(RectF borderRect, int borderWidth, int frameRate, int trackDuration) {
+        if (frameRate <= 0 || trackDuration <= 0) {
+            return null;
+        }
+        int left = StillBorderCache.getOffset(borderRect.left, borderWidth);
+        int top = StillBorderCache.getOffset(borderRect.top, borderWidth);
+        int width = (int) Math.ceil(borderRect.right + StillBorderCache.getOutset(borderWidth)) - left;
+        int height = (int) Math.ceil(borderRect.bottom + StillBorderCache.getOutset(borderWidth)) - top;
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        int frameCount = (int) Math.ceil(trackDuration * frameRate / 1000f) + 1;//含首尾两帧
+        Key key = new Key(borderRect.left - left, borderRect.top - top, borderRect.width(), borderRect.height(),
+                borderWidth, frameCount);
+        RotationAtlas atlas = sAtlases.get(key);
+        if (atlas == null) {
+            long byteCount = (long) width * height * frameCount;
+            trimUnused(sMaxSize - byteCount);
+            if (sSize + byteCount > sMaxSize) {
+                return null;//在用的atlas已占满上限
+            }
+            atlas = new RotationAtlas(key, width, height);
+            atlas.renderFrames();
+            sAtlases.put(key, atlas);
+            sSize += atlas.getByteCount();
+        } else if (atlas.mRefCount == 0) {
+            sUnusedAtlases.remove(key);
+        }
+        atlas.mRefCount++;
+        return atlas;
+    }
+
+    /**
+     * Gives back an atlas from {@link #obtain(RectF, int, int, int)}, which stays cached while the cap allows.
+     */
+    static synchronized void release(RotationAtlas atlas) {
+        if (--atlas.mRefCount > 0) {
+            return;
+        }
+        sUnusedAtlases.put(atlas.mKey, atlas);
+        trimUnused(sMaxSize);
+    }
+
+    private static void trimUnused(long maxSize) {
+        Iterator<RotationAtlas> iterator = sUnusedAtlases.values().iterator();
+        while (sSize > maxSize && iterator.hasNext()) {
+            RotationAtlas atlas = iterator.next();
+            iterator.remove();
+            sAtlases.remove(atlas.mKey);
+            sSize -= atlas.getByteCount();
+        }
+    }
+
+    private RotationAtlas(Key key, int frameWidth, int frameHeight) {
+        mKey = key;
+        mFrames = new Bitmap[key.mFrameCount];
+        mFrameWidth = frameWidth;
+        mFrameHeight = frameHeight;
+        mBorderRect = new RectF(key.mOffsetX, key.mOffsetY, key.mOffsetX + key.mWidth, key.mOffsetY + key.mHeight);
+
+        mPaint.setStyle(Paint.Style.STROKE);
+        mPaint.setAntiAlias(true);
+        mPaint.setStrokeWidth(key.mBorderWidth);
+        mPaint.setStrokeCap(Paint.Cap.ROUND);
+        mDottedTrack.update(mBorderRect);
+    }
+
+    int getByteCount() {
+        return mFrameWidth * mFrameHeight * mFrames.length;
+    }
+
+    /**
+     * Frames are drawn at {@code (StillBorderCache.getOffset(borderRect.left, borderWidth),
+     * StillBorderCache.getOffset(borderRect.top, borderWidth))}: views sharing an atlas only share the sub-pixel
+     * offset of their ring, not its position.
+     *
+     * @param trackPhase see {@link RotateBorderCurves#trackPhase(long, int)}, at least 1 since the opening sweep is
+     *                   not in the atlas
+     * @return the mask for that phase, or null if it could not be allocated when the atlas was created
+     */
+    Bitmap getFrame(float trackPhase) {
+        float fraction = trackPhase - 1f;
+        if (fraction > 1f) {
+            fraction = 2f - fraction;//收缩与伸展对称，共用同一组帧
+        }
+        int index = Math.round(fraction * (mFrames.length - 1));
+        index = Math.max(0, Math.min(index, mFrames.length - 1));
+        return mFrames[index];
+    }
+
+    private void renderFrames() {
+        for (int i = 0; i < mFrames.length; i++) {
+            mFrames[i] = renderFrame(i);//内存不足时该帧留空，绘制时退回实时绘制
+        }
+    }
+
+    private Bitmap renderFrame(int index) {
+        Bitmap frame;
+        try {
+            frame = Bitmap.createBitmap(mFrameWidth, mFrameHeight, Bitmap.Config.ALPHA_8);
+        } catch (OutOfMemoryError e) {
+            return null;
+        }
+        float phase = 1f + (float) index / (mFrames.length - 1);
+        mCanvas.setBitmap(frame);
+        mCanvas.drawArc(mBorderRect, 270f, RotateBorderCurves.solidTrackAngle(phase), false, mPaint);
+        mDottedTrack.draw(mCanvas, RotateBorderCurves.dottedTrackAngle(phase), mPaint);
+        mCanvas.setBitmap(null);
+        return frame;
+    }
+
+    private static final class Key {
+        private final float mOffsetX;
+        private final float mOffsetY;
+        private final float mWidth;
+        private final float mHeight;
+        private final int mBorderWidth;
+        private final int mFrameCount;
+
+        Key(float offsetX, float offsetY, float width, float height, int borderWidth, int frameCount) {
+            mOffsetX = offsetX;
+            mOffsetY = offsetY;
+            mWidth = width;
+            mHeight = height;
+            mBorderWidth = borderWidth;
+            mFrameCount = frameCount;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return Float.compare(key.mOffsetX, mOffsetX) == 0
+                    && Float.compare(key.mOffsetY, mOffsetY) == 0
+                    && Float.compare(key.mWidth, mWidth) == 0
+                    && Float.compare(key.mHeight, mHeight) == 0
+                    && mBorderWidth == key.mBorderWidth
+                    && mFrameCount == key.mFrameCount;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Float.floatToIntBits(mOffsetX);
+            result = 31 * result + Float.floatToIntBits(mOffsetY);
+            result = 31 * result + Float.floatToIntBits(mWidth);
+            result = 31 * result + Float.floatToIntBits(mHeight);
+            result = 31 * result + mBorderWidth;
+            result = 31 * result + mFrameCount;
+            return result;
+        }
+    }
+}
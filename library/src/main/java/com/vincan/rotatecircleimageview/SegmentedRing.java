@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.graphics.SweepGradient;
+
+import com.vincan.rotatecircleimageview.core.BorderSegments;
+
+/**
+ * The STILL border: one arc per color starting at 12 o'clock and going clockwise, separated by
+ * {@link BorderSegments#ARC_GAP_ANGLE} gaps, drawn in a single drawPath whatever the number of
+ * colors.
+ * <p>
+ * The arcs are contours of one precomputed path, and the colors come from a SweepGradient with hard stops placed in
+ * the middle of each gap, so that the round caps of neighbouring arcs keep their own color.
+ *
+ * @author vincanyang
+ */
+final class SegmentedRing {
+
+    private final Path mPath = new Path();
+    private final Paint mPaint = new Paint();
+    private final Matrix mShaderMatrix = new Matrix();
+
+    SegmentedRing() {
+        mPaint.setStyle(Paint.Style.STROKE);
+        mPaint.setAntiAlias(true);
+        mPaint.setStrokeCap(Paint.Cap.ROUND);
+    }
+
+    /**
+     * Rebuilds the path and the gradient, only needed when the geometry or the colors change.
+     */
+    void update(RectF borderRect, int borderWidth, int[] borderColors) {
+        mPath.reset();
+        mPaint.setStrokeWidth(borderWidth);
+        int count = borderColors.length;
+        if (count == 0) {
+            return;
+        }
+        if (count == 1) {
+            mPaint.setShader(null);
+            mPaint.setColor(borderColors[0]);
+            mPath.addArc(borderRect, BorderSegments.START_ANGLE, BorderSegments.sweepAngle(count));
+            return;
+        }
+        float sweepAngle = BorderSegments.sweepAngle(count);
+        for (int i = 0; i < count; i++) {
+            mPath.addArc(borderRect, BorderSegments.startAngle(i, count), sweepAngle);
+        }
+
+        //每种颜色占[上一个间隙中点, 本段间隙中点]，首色同时覆盖最后一个间隙中点到终点
+        int[] colors = new int[BorderSegments.gradientStopCount(count)];
+        float[] positions = new float[colors.length];
+        BorderSegments.fillGradientStops(borderColors, colors, positions);
+
+        SweepGradient shader = new SweepGradient(borderRect.centerX(), borderRect.centerY(), colors, positions);
+        mShaderMatrix.setRotate(BorderSegments.START_ANGLE, borderRect.centerX(), borderRect.centerY());//SweepGradient从3点钟方向开始
+        shader.setLocalMatrix(mShaderMatrix);
+        mPaint.setColor(Color.BLACK);
+        mPaint.setShader(shader);
+    }
+
+    void draw(Canvas canvas) {
+        canvas.drawPath(mPath, mPaint);
+    }
+}
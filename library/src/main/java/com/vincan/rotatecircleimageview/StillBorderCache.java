@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.RectF;
+import android.util.LruCache;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A process-wide LRU cache of pre-rendered STILL border rings, shared by every view with the same ring geometry and
+ * colors. Thread-safe: views use it on the main thread and {@link AvatarRenderer} on its background threads. A
+ * miss renders the ring while holding the lock, so concurrent lookups wait for it.
+ *
+ * @author vincanyang
+ */
+final class StillBorderCache {
+
+    static final int DEFAULT_MAX_SIZE = 4 * 1024 * 1024;
+
+    private static LruCache<Key, Bitmap> sCache = newCache(DEFAULT_MAX_SIZE);
+
+    private StillBorderCache() {
+    }
+
+    private static LruCache<Key, Bitmap> newCache(int maxSize) {
+        return new LruCache<Key, Bitmap>(maxSize) {
+            @Override
+            protected int sizeOf(Key key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+    }
+
+    static synchronized void setMaxSize(int maxSize) {
+        if (maxSize == sCache.maxSize()) {
+            return;
+        }
+        LruCache<Key, Bitmap> cache = newCache(maxSize);
+        for (Map.Entry<Key, Bitmap> entry : sCache.snapshot().entrySet()) {
+            cache.put(entry.getKey(), entry.getValue());
+        }
+        sCache = cache;
+    }
+
+    /**
+     * Returns the ring for the given border rect, rendering it with {@code ring} and caching it on a miss. The bitmap
+     * must be drawn at {@code (floor(borderRect.left - outset), floor(borderRect.top - outset))}, see
+     * {@link #getOffset(float, int)}.
+     *
+     * @return the ring, or null if it could not be allocated
+     */
+    static synchronized Bitmap get(RectF borderRect, int borderWidth, int[] borderColors, SegmentedRing ring) {
+        int left = getOffset(borderRect.left, borderWidth);
+        int top = getOffset(borderRect.top, borderWidth);
+        Key key = new Key(borderRect.left - left, borderRect.top - top, borderRect.width(), borderRect.height(),
+                borderWidth, borderColors);
+        Bitmap bitmap = sCache.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        int width = (int) Math.ceil(borderRect.right + getOutset(borderWidth)) - left;
+        int height = (int) Math.ceil(borderRect.bottom + getOutset(borderWidth)) - top;
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        try {
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        } catch (OutOfMemoryError e) {
+            return null;
+        }
+        Canvas canvas = new Canvas(bitmap);
+        canvas.translate(-left, -top);
+        ring.draw(canvas);
+        sCache.put(key, bitmap);
+        return bitmap;
+    }
+
+    static int getOffset(float position, int borderWidth) {
+        return (int) Math.floor(position - getOutset(borderWidth));
+    }
+
+    static float getOutset(int borderWidth) {
+        return borderWidth / 2.0f + 1;//加上抗锯齿像素
+    }
+
+    private static final class Key {
+        private final float mOffsetX;
+        private final float mOffsetY;
+        private final float mWidth;
+        private final float mHeight;
+        private final int mBorderWidth;
+        private final int[] mBorderColors;
+        private final int mHashCode;
+
+        Key(float offsetX, float offsetY, float width, float height, int borderWidth, int[] borderColors) {
+            mOffsetX = offsetX;
+            mOffsetY = offsetY;
+            mWidth = width;
+            mHeight = height;
+            mBorderWidth = borderWidth;
+            mBorderColors = borderColors.clone();
+            int result = Float.floatToIntBits(offsetX);
+            result = 31 * result + Float.floatToIntBits(offsetY);
+            result = 31 * result + Float.floatToIntBits(width);
+            result = 31 * result + Float.floatToIntBits(height);
+            result = 31 * result + borderWidth;
+            result = 31 * result + Arrays.hashCode(mBorderColors);
+            mHashCode = result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return mHashCode == key.mHashCode
+                    && Float.compare(key.mOffsetX, mOffsetX) == 0
+                    && Float.compare(key.mOffsetY, mOffsetY) == 0
+                    && Float.compare(key.mWidth, mWidth) == 0
+                    && Float.compare(key.mHeight, mHeight) == 0
+                    && mBorderWidth == key.mBorderWidth
+                    && Arrays.equals(mBorderColors, key.mBorderColors);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+}
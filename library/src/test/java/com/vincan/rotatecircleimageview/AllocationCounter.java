@@ -0,0 +1,60 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Counts the bytes the current thread allocates, through the JVM's per-thread allocation counter.
+ *
+ * @author vincanyang
+ */
+final class AllocationCounter {
+
+    private final com.sun.management.ThreadMXBean mThreadMXBean;
+    private final long mThreadId = Thread.currentThread().getId();
+    private final long mOverhead;
+    private long mStart;
+
+    AllocationCounter() {
+        mThreadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(mThreadMXBean.isThreadAllocatedMemorySupported());
+        mThreadMXBean.setThreadAllocatedMemoryEnabled(true);
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 16; i++) {//读计数本身也可能分配，取最小值扣除
+            long start = allocatedBytes();
+            overhead = Math.min(overhead, allocatedBytes() - start);
+        }
+        mOverhead = overhead;
+    }
+
+    void start() {
+        mStart = allocatedBytes();
+    }
+
+    /**
+     * @return the bytes allocated since {@link #start()}
+     */
+    long stop() {
+        return Math.max(0, allocatedBytes() - mStart - mOverhead);
+    }
+
+    private long allocatedBytes() {
+        return mThreadMXBean.getThreadAllocatedBytes(mThreadId);
+    }
+}
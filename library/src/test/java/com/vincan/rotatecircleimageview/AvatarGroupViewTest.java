@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author vincanyang
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25)
+public class AvatarGroupViewTest {
+
+    private AvatarGroupView mView;
+
+    @Before
+    public void setUp() {
+        mView = new AvatarGroupView(RuntimeEnvironment.application);
+        Bitmap bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        mView.setAvatarBitmaps(Arrays.asList(bitmap, bitmap, bitmap));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsFullOverlap() {
+        mView.setOverlap(1f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeOverlap() {
+        mView.setOverlap(-0.1f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNaNOverlap() {
+        mView.setOverlap(Float.NaN);
+    }
+
+    @Test
+    public void measuresEveryAvatarWithAHighOverlap() {
+        mView.setOverlap(0.9f);
+        mView.measure(View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED),
+                View.MeasureSpec.makeMeasureSpec(100, View.MeasureSpec.EXACTLY));
+        assertEquals(120, mView.getMeasuredWidth());
+    }
+
+    @Test
+    public void measuresWrapContentAtTheAvatarDiameter() {
+        mView.setAvatarDiameter(40);
+        mView.setOverlap(0.5f);
+        mView.measure(View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        assertEquals(80, mView.getMeasuredWidth());
+        assertEquals(40, mView.getMeasuredHeight());
+
+        mView.setLayout(AvatarGroupView.Layout.GRID);
+        mView.setMaxColumns(2);
+        mView.setSpacing(4);
+        mView.measure(View.MeasureSpec.makeMeasureSpec(200, View.MeasureSpec.AT_MOST),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        assertEquals(84, mView.getMeasuredWidth());
+        assertEquals(84, mView.getMeasuredHeight());
+    }
+
+    @Test
+    public void returnsRasterizedBitmapsToThePoolWhileDetached() {
+        mView.setAvatarDrawables(Arrays.asList(new ColorDrawable(Color.RED)));
+        assertNotNull(mView.getAvatarDrawable(0).getBitmap());
+        int poolSize = BitmapPool.size();
+
+        mView.onDetachedFromWindow();
+        assertNull(mView.getAvatarDrawable(0).getBitmap());
+        assertTrue(BitmapPool.size() > poolSize);
+
+        mView.onAttachedToWindow();
+        assertNotNull(mView.getAvatarDrawable(0).getBitmap());
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author vincanyang
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25)
+public class AvatarPrefetcherTest {
+
+    private static final int SIZE = 96;
+    private static final int IMAGE_SIZE = 288;//inSampleSize为2时正好是96 * 1.5，Robolectric的缩放会丢失位图config
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @After
+    public void tearDown() {
+        AvatarCache.clear();
+    }
+
+    @Test
+    public void bindTakesThePrefetchedAvatarOfAConfiguredView() throws Exception {
+        Uri uri = Uri.parse("content://avatars/prefetched");
+        registerImage(uri, IMAGE_SIZE);
+        RotateCircleImageView template = newView();
+        AvatarPrefetcher prefetcher = AvatarPrefetcher.prefetch(RuntimeEnvironment.application,
+                Collections.singletonList(uri), template);
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!prefetcher.isDone() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(prefetcher.isDone());
+        Bitmap prefetched = AvatarCache.peek(template.newAvatarCacheKey(AvatarLoader.Source.of(uri)));
+        assertNotNull(prefetched);
+        assertEquals(Bitmap.Config.RGB_565, prefetched.getConfig());
+
+        RotateCircleImageView view = newView();
+        int hitCount = AvatarCache.hitCount();
+        view.setImageURI(uri);//不再注册图片流，未命中时无法解码
+        assertEquals(hitCount + 1, AvatarCache.hitCount());
+        assertSame(prefetched, view.getAvatarDrawable().getBitmap());
+    }
+
+    private static RotateCircleImageView newView() {
+        RotateCircleImageView view = new RotateCircleImageView(RuntimeEnvironment.application, null);
+        view.setBitmapQualityMargin(1.5f);
+        view.setBitmapConfig(Bitmap.Config.RGB_565);
+        view.layout(0, 0, SIZE, SIZE);
+        return view;
+    }
+
+    /**
+     * Registers an image that can be opened any number of times, since a decode reads it once for its bounds first.
+     */
+    private static void registerImage(Uri uri, int size) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB), "png", out);
+        Shadows.shadowOf(RuntimeEnvironment.application.getContentResolver())
+                .registerInputStream(uri, new ByteArrayInputStream(out.toByteArray()) {
+                    @Override
+                    public void close() {
+                        reset();
+                    }
+                });
+    }
+}
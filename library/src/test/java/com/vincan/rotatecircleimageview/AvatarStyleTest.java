@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Color;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author vincanyang
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25)
+public class AvatarStyleTest {
+
+    @Test
+    public void borderColorsAreNeverShared() {
+        int[] colors = new int[]{Color.RED, Color.GREEN};
+        AvatarStyle style = new AvatarStyle.Builder().setBorderColors(colors).build();
+        colors[0] = Color.BLUE;
+        AvatarStyle copy = new AvatarStyle.Builder(style).build();
+        RotateCircleAvatarDrawable drawable = new RotateCircleAvatarDrawable();
+        drawable.setStyle(style);
+        drawable.getBorderColors()[0] = Color.BLUE;
+        style.getBorderColors()[0] = Color.BLUE;
+
+        assertEquals(Color.RED, style.getBorderColors()[0]);
+        assertEquals(Color.RED, copy.getBorderColors()[0]);
+        assertEquals(Color.RED, drawable.getBorderColors()[0]);
+    }
+
+    @Test
+    public void cachedStylesAreObtainedWithoutAllocating() {
+        Context context = RuntimeEnvironment.application;
+        AvatarStyle style = AvatarStyle.obtain(context, null, 0);
+        AllocationCounter allocationCounter = new AllocationCounter();
+        allocationCounter.start();
+        AvatarStyle cached = AvatarStyle.obtain(context, null, 0);
+        assertEquals(0, allocationCounter.stop());
+        assertSame(style, cached);
+    }
+
+    @Test
+    public void configurationChangesParseAgain() {
+        Context context = RuntimeEnvironment.application;
+        Resources resources = context.getResources();
+        AvatarStyle style = AvatarStyle.obtain(context, null, 0);
+        assertSame(style, AvatarStyle.obtain(context, null, 0));
+
+        Configuration configuration = new Configuration(resources.getConfiguration());
+        configuration.fontScale *= 2f;
+        resources.updateConfiguration(configuration, resources.getDisplayMetrics());
+        assertNotSame(style, AvatarStyle.obtain(context, null, 0));
+    }
+}
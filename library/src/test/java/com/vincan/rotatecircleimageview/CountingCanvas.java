@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+
+/**
+ * A canvas that only counts the calls the avatar drawing makes, so that allocation counts cover the drawing code and
+ * not Robolectric's canvas shadow, which records every call as text.
+ *
+ * @author vincanyang
+ */
+class CountingCanvas extends Canvas {
+
+    int mDrawCount;
+    private int mSaveCount = 1;
+
+    @Override
+    public void drawCircle(float cx, float cy, float radius, Paint paint) {
+        mDrawCount++;
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+        mDrawCount++;
+    }
+
+    @Override
+    public void drawArc(RectF oval, float startAngle, float sweepAngle, boolean useCenter, Paint paint) {
+        mDrawCount++;
+    }
+
+    @Override
+    public void drawPoints(float[] pts, int offset, int count, Paint paint) {
+        mDrawCount++;
+    }
+
+    @Override
+    public void drawPath(Path path, Paint paint) {
+        mDrawCount++;
+    }
+
+    @Override
+    public int save() {
+        return mSaveCount++;
+    }
+
+    @Override
+    public int saveLayerAlpha(RectF bounds, int alpha, int saveFlags) {
+        return mSaveCount++;
+    }
+
+    @Override
+    public void restoreToCount(int saveCount) {
+        mSaveCount = saveCount;
+    }
+
+    @Override
+    public void translate(float dx, float dy) {
+    }
+
+    @Override
+    public void rotate(float degrees) {
+    }
+}
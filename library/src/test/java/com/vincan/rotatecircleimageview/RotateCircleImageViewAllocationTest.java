@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import com.vincan.rotatecircleimageview.RotateCircleImageView.BorderStyle;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Rebinds views over and over and checks that, once a bind has been set up, drawing frames allocates nothing.
+ *
+ * @author vincanyang
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25)
+public class RotateCircleImageViewAllocationTest {
+
+    private static final int SIZE = 96;
+    private static final int BINDS = 20;
+    private static final int FRAMES = 60;
+    private static final int WARM_UP_FRAMES = 2000;//Robolectric的方法句柄达到调用次数后会在调用线程上重新链接并分配，atlas的帧也在此期间全部渲染
+    private static final long FRAME_INTERVAL_MILLIS = 16;
+
+    private final Bitmap[] mBitmaps = new Bitmap[2];
+    private AllocationCounter mAllocationCounter;
+    private CountingCanvas mCanvas;
+
+    @Before
+    public void setUp() {
+        mBitmaps[0] = Bitmap.createBitmap(200, 200, Bitmap.Config.ARGB_8888);
+        mBitmaps[1] = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.RGB_565);
+        mAllocationCounter = new AllocationCounter();
+        mCanvas = new CountingCanvas();
+    }
+
+    @Test
+    public void stillBorderFramesDoNotAllocate() {
+        RotateCircleImageView view = newView(BorderStyle.STILL);
+        for (int bind = 0; bind < BINDS; bind++) {
+            view.setImageBitmap(mBitmaps[bind % mBitmaps.length]);
+            view.onDraw(mCanvas);//第一帧完成setup，可以分配
+            if (bind == 0) {
+                for (int frame = 0; frame < WARM_UP_FRAMES; frame++) {
+                    view.onDraw(mCanvas);
+                }
+            }
+
+            int drawCount = mCanvas.mDrawCount;
+            mAllocationCounter.start();
+            for (int frame = 0; frame < FRAMES; frame++) {
+                view.onDraw(mCanvas);
+            }
+            long allocatedBytes = mAllocationCounter.stop();
+            assertEquals("bytes allocated by " + FRAMES + " frames after bind " + bind, 0, allocatedBytes);
+            assertTrue(mCanvas.mDrawCount > drawCount);
+        }
+    }
+
+    @Test
+    public void rotateBorderFramesDoNotAllocate() {
+        assertRotateBorderFramesDoNotAllocate(false);
+    }
+
+    @Test
+    public void rotationAtlasFramesDoNotAllocate() {
+        assertRotateBorderFramesDoNotAllocate(true);
+    }
+
+    private void assertRotateBorderFramesDoNotAllocate(boolean rotationAtlas) {
+        RotateCircleImageView view = newView(BorderStyle.ROTATE);
+        view.setBorderRotationAtlas(rotationAtlas);
+        RotateCircleAvatarDrawable drawable = view.getAvatarDrawable();
+        assertTrue(drawable.startBorderAnimation());//不经过Choreographer，由测试逐帧驱动
+        long frameTime = 0;
+        for (int bind = 0; bind < BINDS; bind++) {
+            view.setImageBitmap(mBitmaps[bind % mBitmaps.length]);
+            drawable.advanceBorderAnimation(frameTime += FRAME_INTERVAL_MILLIS);
+            view.onDraw(mCanvas);
+            if (bind == 0) {
+                for (int frame = 0; frame < WARM_UP_FRAMES; frame++) {
+                    drawable.advanceBorderAnimation(frameTime += FRAME_INTERVAL_MILLIS);
+                    view.onDraw(mCanvas);
+                }
+            }
+
+            mAllocationCounter.start();
+            for (int frame = 0; frame < FRAMES; frame++) {
+                drawable.advanceBorderAnimation(frameTime += FRAME_INTERVAL_MILLIS);
+                view.onDraw(mCanvas);
+            }
+            long allocatedBytes = mAllocationCounter.stop();
+            assertEquals("bytes allocated by " + FRAMES + " frames after bind " + bind, 0, allocatedBytes);
+        }
+        drawable.stop();//归还atlas
+    }
+
+    @Test
+    public void drawableFramesDoNotAllocate() {
+        RotateCircleAvatarDrawable drawable = new RotateCircleAvatarDrawable();
+        drawable.setBorderWidth(4);
+        drawable.setBorderColors(new int[]{Color.RED, Color.GREEN, Color.BLUE});
+        drawable.setBounds(0, 0, SIZE, SIZE);
+        for (int bind = 0; bind < BINDS; bind++) {
+            drawable.setBitmap(mBitmaps[bind % mBitmaps.length]);
+            drawable.draw(mCanvas);
+            if (bind == 0) {
+                for (int frame = 0; frame < WARM_UP_FRAMES; frame++) {
+                    drawable.draw(mCanvas);
+                }
+            }
+
+            mAllocationCounter.start();
+            for (int frame = 0; frame < FRAMES; frame++) {
+                drawable.draw(mCanvas);
+            }
+            long allocatedBytes = mAllocationCounter.stop();
+            assertEquals("bytes allocated by " + FRAMES + " frames after bind " + bind, 0, allocatedBytes);
+        }
+    }
+
+    private static RotateCircleImageView newView(BorderStyle borderStyle) {
+        RotateCircleImageView view = new RotateCircleImageView(RuntimeEnvironment.application, null);
+        view.setBorderWidth(4);
+        view.setBorderColors(new int[]{Color.RED, Color.GREEN, Color.BLUE});
+        view.setBorderStyle(borderStyle);
+        view.layout(0, 0, SIZE, SIZE);
+        return view;
+    }
+}
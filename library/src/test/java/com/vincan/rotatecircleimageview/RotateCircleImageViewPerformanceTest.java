@@ -0,0 +1,203 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.widget.FrameLayout;
+
+import com.vincan.rotatecircleimageview.RotateCircleImageView.BorderStyle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Binds and draws a screenful of views the way a scrolling list does, and gates on what does not depend on the
+ * machine: frames must allocate nothing, a bind must not allocate more than view-performance-baseline.properties
+ * allows, and every bind must cost exactly one setup and every frame one onDraw per view, as counted by
+ * {@link RotateCircleMetrics}. The time per bind, setup and onDraw is only reported in the failure messages.
+ *
+ * @author vincanyang
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25)
+public class RotateCircleImageViewPerformanceTest {
+
+    private static final String BASELINE = "view-performance-baseline.properties";
+    private static final int VIEW_COUNT = 24;
+    private static final int SIZE = 96;
+    private static final int BINDS = 10;
+    private static final int FRAMES = 60;
+    private static final int WARM_UP_BINDS = 10;//让Robolectric的方法句柄完成重新链接
+    private static final long FRAME_INTERVAL_MILLIS = 16;
+
+    private final Bitmap[] mBitmaps = new Bitmap[2];
+    private final Properties mBaseline = new Properties();
+    private AllocationCounter mAllocationCounter;
+    private CountingCanvas mCanvas;
+    private RotateCircleImageView[] mViews;
+    private long mFrameTime;
+
+    @Before
+    public void setUp() throws IOException {
+        mBitmaps[0] = Bitmap.createBitmap(200, 200, Bitmap.Config.ARGB_8888);
+        mBitmaps[1] = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.RGB_565);
+        InputStream in = getClass().getResourceAsStream(BASELINE);
+        try {
+            mBaseline.load(in);
+        } finally {
+            in.close();
+        }
+        mAllocationCounter = new AllocationCounter();
+        mCanvas = new CountingCanvas();
+        RotateCircleMetrics.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        RotateCircleMetrics.setEnabled(false);
+        RotateCircleMetrics.reset();
+    }
+
+    @Test
+    public void stillBorder() {
+        assertWithinBaseline(BorderStyle.STILL, "still");
+    }
+
+    @Test
+    public void rotateBorder() {
+        assertWithinBaseline(BorderStyle.ROTATE, "rotate");
+    }
+
+    private void assertWithinBaseline(BorderStyle borderStyle, String name) {
+        FrameLayout parent = new FrameLayout(RuntimeEnvironment.application);
+        mViews = new RotateCircleImageView[VIEW_COUNT];
+        for (int i = 0; i < VIEW_COUNT; i++) {
+            mViews[i] = new RotateCircleImageView(RuntimeEnvironment.application, null);
+            mViews[i].setBorderWidth(4);
+            mViews[i].setBorderColors(new int[]{Color.RED, Color.GREEN, Color.BLUE});
+            mViews[i].setBorderStyle(borderStyle);
+            parent.addView(mViews[i], SIZE, SIZE);
+            mViews[i].layout(0, 0, SIZE, SIZE);
+            if (borderStyle == BorderStyle.ROTATE) {
+                assertTrue(mViews[i].getAvatarDrawable().startBorderAnimation());//不经过Choreographer，由测试逐帧驱动
+            }
+        }
+        for (int bind = 0; bind < WARM_UP_BINDS; bind++) {
+            resetBitmapDescriptions();
+            bindAll(bind);
+            drawFrames();
+        }
+
+        long bindNanos = Long.MAX_VALUE;
+        long bindBytes = Long.MAX_VALUE;
+        long setupNanos = Long.MAX_VALUE;
+        long drawNanos = Long.MAX_VALUE;
+        for (int bind = 0; bind < BINDS; bind++) {
+            resetBitmapDescriptions();
+            RotateCircleMetrics.reset();
+            long start = System.nanoTime();
+            mAllocationCounter.start();
+            bindAll(bind);
+            long allocatedBytes = mAllocationCounter.stop();
+            bindNanos = Math.min(bindNanos, (System.nanoTime() - start) / VIEW_COUNT);
+            bindBytes = Math.min(bindBytes, allocatedBytes / VIEW_COUNT);//排除Robolectric偶尔生成的代理类
+            long setupCount = RotateCircleMetrics.getSetupCount();
+            setupNanos = Math.min(setupNanos, RotateCircleMetrics.getSetupTimeNanos() / Math.max(1, setupCount));
+            assertEquals("setups of " + VIEW_COUNT + " " + name + " views in bind " + bind, VIEW_COUNT, setupCount);
+
+            for (int attempt = 0; attempt < 2; attempt++) {//Robolectric偶尔链接调用点，重测一次
+                RotateCircleMetrics.reset();
+                mAllocationCounter.start();
+                drawFrames();
+                allocatedBytes = mAllocationCounter.stop();
+                drawNanos = Math.min(drawNanos,
+                        RotateCircleMetrics.getDrawTimeNanos() / RotateCircleMetrics.getDrawCount());
+                if (allocatedBytes == 0) {
+                    break;
+                }
+            }
+            assertEquals("bytes allocated by " + FRAMES + " frames of " + VIEW_COUNT + " " + name
+                    + " views after bind " + bind, 0, allocatedBytes);
+            assertEquals("onDraw calls in " + FRAMES + " frames after bind " + bind, FRAMES * VIEW_COUNT,
+                    RotateCircleMetrics.getDrawCount());
+            assertEquals("setups while drawing " + FRAMES + " frames after bind " + bind, 0,
+                    RotateCircleMetrics.getSetupCount());
+        }
+        for (RotateCircleImageView view : mViews) {
+            view.getAvatarDrawable().stop();
+        }
+
+        String measured = String.format(Locale.US, "%s: bind %d ns, %d bytes, setup %d ns; onDraw %d ns",
+                name, bindNanos, bindBytes, setupNanos, drawNanos);//只随失败信息输出，不作断言
+        long baselineBytes = Long.parseLong(mBaseline.getProperty(name + ".bindBytes"));
+        long allocationNoiseBytes = Long.parseLong(mBaseline.getProperty("allocationNoiseBytes"));
+        assertTrue(measured + ", baseline " + baselineBytes + " bytes per bind",
+                bindBytes <= baselineBytes + allocationNoiseBytes);
+    }
+
+    /**
+     * Robolectric records every draw into a bitmap in its description, so without this every bind that reuses a
+     * pooled bitmap would cost more than the previous one.
+     */
+    private void resetBitmapDescriptions() {
+        for (RotateCircleImageView view : mViews) {
+            Bitmap bitmap = view.getAvatarDrawable().getBitmap();
+            if (bitmap != null && bitmap != mBitmaps[0] && bitmap != mBitmaps[1]) {
+                Shadows.shadowOf(bitmap).setDescription("");//解码出的位图稍后回到BitmapPool被复用
+            }
+        }
+    }
+
+    /**
+     * Binds a new bitmap to every view, which sets the view up for it, and draws its first frame.
+     */
+    private void bindAll(int bind) {
+        mFrameTime += FRAME_INTERVAL_MILLIS;
+        for (int i = 0; i < VIEW_COUNT; i++) {
+            mViews[i].setImageBitmap(mBitmaps[(bind + i) % mBitmaps.length]);
+            drawFrame(mViews[i]);
+        }
+    }
+
+    private void drawFrames() {
+        for (int frame = 0; frame < FRAMES; frame++) {
+            mFrameTime += FRAME_INTERVAL_MILLIS;
+            for (RotateCircleImageView view : mViews) {
+                drawFrame(view);
+            }
+        }
+    }
+
+    private void drawFrame(RotateCircleImageView view) {
+        view.getAvatarDrawable().advanceBorderAnimation(mFrameTime);
+        view.onDraw(mCanvas);
+    }
+}
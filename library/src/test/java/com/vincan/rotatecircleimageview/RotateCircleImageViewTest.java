@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.drawable.GradientDrawable;
+import android.net.Uri;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author vincanyang
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25)
+public class RotateCircleImageViewTest {
+
+    private static final int SIZE = 96;
+    private static final int LARGE_SIZE = 400;
+
+    private RotateCircleImageView mView;
+    private CountingCanvas mCanvas;
+
+    @Before
+    public void setUp() {
+        mView = new RotateCircleImageView(RuntimeEnvironment.application, null);
+        mView.setBitmapQualityMargin(0f);//不降采样，绘制时缩小到四分之一以下
+        mView.setBitmapMipMap(true);
+        mView.layout(0, 0, SIZE, SIZE);
+        mCanvas = new CountingCanvas();
+    }
+
+    @Test
+    public void leavesCallerBitmapsUntouched() {
+        Bitmap bitmap = Bitmap.createBitmap(LARGE_SIZE, LARGE_SIZE, Bitmap.Config.ARGB_8888);
+        mView.setImageBitmap(bitmap);
+        mView.onDraw(mCanvas);
+        assertFalse(bitmap.hasMipMap());
+    }
+
+    @Test
+    public void generatesMipMapsForRasterizedDrawables() {
+        mView.setImageDrawable(newDrawable(LARGE_SIZE));
+        assertTrue(mView.getAvatarDrawable().getBitmap().hasMipMap());//绑定时即准备好，不等到首次绘制
+    }
+
+    @Test
+    public void neverReusesTheBitmapTheAvatarStillDraws() {
+        mView.setBitmapQualityMargin(1f);
+        mView.setImageDrawable(newDrawable(LARGE_SIZE));
+        Bitmap bitmap = mView.getAvatarDrawable().getBitmap();
+        mView.setImageDrawable(newDrawable(LARGE_SIZE));
+        assertNotSame(bitmap, mView.getAvatarDrawable().getBitmap());//换下的位图要等drawable换用新图后才归还位图池
+    }
+
+    @Test
+    public void decodesAgainWhenGrowingAfterDownsampling() throws IOException {
+        Uri uri = Uri.parse("content://avatars/large");
+        mView.setBitmapQualityMargin(1f);
+        registerImage(uri, LARGE_SIZE);
+        mView.setImageURI(uri);
+        assertEquals(SIZE, mView.getAvatarDrawable().getBitmap().getWidth());//尚未绘制就已降采样
+
+        registerImage(uri, LARGE_SIZE);
+        mView.layout(0, 0, SIZE * 3, SIZE * 3);
+        assertEquals(SIZE * 3, mView.getAvatarDrawable().getBitmap().getWidth());
+    }
+
+    @Test
+    public void appliesAStyleWithOneSetupAndOneInvalidation() {
+        final int[] invalidations = new int[1];
+        RotateCircleImageView view = new RotateCircleImageView(RuntimeEnvironment.application, null) {
+            @Override
+            public void invalidate() {
+                invalidations[0]++;
+                super.invalidate();
+            }
+
+            @Override
+            public void invalidate(int l, int t, int r, int b) {
+                invalidations[0]++;
+                super.invalidate(l, t, r, b);
+            }
+        };
+        view.layout(0, 0, SIZE, SIZE);
+        view.setImageDrawable(newDrawable(LARGE_SIZE));
+        AvatarStyle style = new AvatarStyle.Builder().setBorderWidth(4).setBorderPadding(2)
+                .setBorderColors(new int[]{Color.RED, Color.BLUE}).setCircleBackgroundColor(Color.WHITE)
+                .setBitmapQualityMargin(2f).setBitmapConfig(Bitmap.Config.RGB_565).setPlaceholderColor(Color.GRAY)
+                .build();
+        RotateCircleMetrics.setEnabled(true);
+        try {
+            RotateCircleMetrics.reset();
+            invalidations[0] = 0;
+            view.setStyle(style);
+            assertEquals(1, RotateCircleMetrics.getSetupCount());
+            assertEquals(1, invalidations[0]);
+        } finally {
+            RotateCircleMetrics.setEnabled(false);
+            RotateCircleMetrics.reset();
+        }
+        assertEquals(Bitmap.Config.RGB_565, view.getAvatarDrawable().getBitmap().getConfig());
+    }
+
+    private static GradientDrawable newDrawable(int size) {
+        GradientDrawable drawable = new GradientDrawable();
+        drawable.setSize(size, size);
+        return drawable;
+    }
+
+    private static void registerImage(Uri uri, int size) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB), "png", out);
+        Shadows.shadowOf(RuntimeEnvironment.application.getContentResolver())
+                .registerInputStream(uri, new ByteArrayInputStream(out.toByteArray()));
+    }
+}
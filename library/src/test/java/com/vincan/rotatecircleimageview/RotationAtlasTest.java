@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016 - 2017 Vincan Yang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vincan.rotatecircleimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that every obtained atlas counts against the cap until it is released.
+ *
+ * @author vincanyang
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25)
+public class RotationAtlasTest {
+
+    private static final int BORDER_WIDTH = 4;
+    private static final int TRACK_DURATION = 2000;
+
+    private final List<RotationAtlas> mObtained = new ArrayList<RotationAtlas>();
+
+    @After
+    public void tearDown() {
+        for (RotationAtlas atlas : mObtained) {
+            RotationAtlas.release(atlas);
+        }
+        RotationAtlas.setMaxSize(0);//清空缓存，不影响其他测试
+        RotationAtlas.setMaxSize(RotationAtlas.DEFAULT_MAX_SIZE);
+    }
+
+    @Test
+    public void sameRingSharesOneAtlas() {
+        RotationAtlas atlas = obtain(new RectF(2, 2, 94, 94), 60);
+        assertSame(atlas, obtain(new RectF(102, 2, 194, 94), 60));
+        assertNotSame(atlas, obtain(new RectF(2, 2, 94, 94), 30));
+    }
+
+    @Test
+    public void framesCoverOneTrackDurationAtTheFrameRate() {
+        RotationAtlas atlas = obtain(new RectF(2, 2, 94, 94), 60);
+        assertEquals(98 * 98 * (TRACK_DURATION * 60 / 1000 + 1), atlas.getByteCount());//92的圆环加上边框与抗锯齿像素
+    }
+
+    @Test
+    public void shrinkingAndGrowingShareFrames() {
+        RotationAtlas atlas = obtain(new RectF(2, 2, 94, 94), 60);
+        Bitmap frame = atlas.getFrame(1.25f);
+        assertNotNull(frame);
+        assertSame(frame, atlas.getFrame(2.75f));
+    }
+
+    @Test
+    public void framesAreRenderedWhenObtained() {
+        RotationAtlas atlas = obtain(new RectF(2, 2, 94, 94), 60);
+        AllocationCounter allocationCounter = new AllocationCounter();
+        allocationCounter.start();
+        for (float trackPhase = 1f; trackPhase <= 3f; trackPhase += 1f / 60) {
+            assertNotNull(atlas.getFrame(trackPhase));
+        }
+        assertEquals(0, allocationCounter.stop());
+    }
+
+    @Test
+    public void atlasesInUseCountAgainstTheCap() {
+        RotationAtlas atlas = obtain(new RectF(2, 2, 94, 94), 60);
+        RotationAtlas.setMaxSize(atlas.getByteCount() * 3 / 2);
+        assertNull(obtain(new RectF(2, 2, 90, 90), 60));
+
+        RotationAtlas.release(atlas);
+        mObtained.remove(atlas);
+        assertNotNull(obtain(new RectF(2, 2, 90, 90), 60));//未被引用的atlas让出空间
+    }
+
+    @Test
+    public void shrinkingTheCapKeepsAtlasesInUse() {
+        RotationAtlas atlas = obtain(new RectF(2, 2, 94, 94), 60);
+        RotationAtlas.setMaxSize(0);
+        assertSame(atlas, obtain(new RectF(2, 2, 94, 94), 60));
+        assertNull(obtain(new RectF(2, 2, 90, 90), 60));
+    }
+
+    private RotationAtlas obtain(RectF borderRect, int frameRate) {
+        RotationAtlas atlas = RotationAtlas.obtain(borderRect, BORDER_WIDTH, frameRate, TRACK_DURATION);
+        if (atlas != null) {
+            mObtained.add(atlas);
+        }
+        return atlas;
+    }
+}
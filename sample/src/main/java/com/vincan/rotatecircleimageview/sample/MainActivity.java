@@ -16,7 +16,11 @@ public class MainActivity extends Activity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        //固定尺寸的头像在后台线程解码；第一个头像是wrap_content，需要图片的固有尺寸，仍由android:src同步解码
+        ((RotateCircleImageView) findViewById(R.id.borderImageView)).loadImageResource(R.drawable.penguin);
+        ((RotateCircleImageView) findViewById(R.id.borderColorsImageView)).loadImageResource(R.drawable.penguin);
         final RotateCircleImageView rotateCircleImageView = (RotateCircleImageView) findViewById(R.id.rotateCircleImageView);
+        rotateCircleImageView.loadImageResource(R.drawable.penguin);
         rotateCircleImageView.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {